@@ -0,0 +1,37 @@
+package com.vapps.security.aot;
+
+import com.vapps.security.config.*;
+import com.vapps.security.dto.ErrorResponse;
+import com.vapps.security.jfr.ValidationStageEvent;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * Hints for running the filter in a GraalVM native image. The Lombok config beans are bound and the error response
+ * is written through Jackson, both need reflection on the generated accessors.
+ */
+public class WebSecurityRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<Class<?>> BEAN_TYPES = List.of(WebSecurityConfiguration.class, URLConfig.class,
+            URLParamConfig.class, PathVariable.class, RequestBodyConfig.class, RequestBodyField.class,
+            ResponseBodyConfig.class, HeaderConfig.class, CookieConfig.class,
+            ClientBlockingConfig.class, ShadowValidationConfig.class, ErrorResponse.class);
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : BEAN_TYPES) {
+            hints.reflection().registerType(type, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS, MemberCategory.DECLARED_FIELDS);
+        }
+        hints.reflection().registerType(DataType.class, MemberCategory.PUBLIC_FIELDS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(RequestBodyConfig.RequestBodyType.class, MemberCategory.PUBLIC_FIELDS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(ValidationStageEvent.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.DECLARED_FIELDS);
+        hints.resources().registerPattern("jfr/web-security.jfc");
+    }
+}
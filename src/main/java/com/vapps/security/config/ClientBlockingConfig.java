@@ -0,0 +1,29 @@
+package com.vapps.security.config;
+
+import lombok.Data;
+
+/**
+ * Settings for counting rejected requests per client and blocking the clients which crosses the threshold.
+ */
+@Data
+public class ClientBlockingConfig {
+
+    /**
+     * Header used to identify the client. If null then the remote address is used.
+     *
+     * The header must be set or overwritten by a trusted proxy in front of the application, never passed through
+     * from the client, otherwise a client can change it to avoid the blocking or set it to the address of another
+     * client to get that client blocked. If the header has a comma separated list of values, only the last one is
+     * used as the key.
+     */
+    private String clientKeyHeader;
+    private int rejectionThreshold = 100;
+    private long decayIntervalMillis = 60_000;
+
+    /**
+     * Size of the sketch. Memory used is width * depth * 8 bytes regardless of the number of clients.
+     */
+    private int width = 16_384;
+    private int depth = 4;
+
+}
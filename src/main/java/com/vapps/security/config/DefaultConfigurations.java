@@ -1,11 +1,14 @@
 package com.vapps.security.config;
 
+import com.vapps.security.aot.WebSecurityRuntimeHints;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.util.AntPathMatcher;
 
 @Configuration
+@ImportRuntimeHints(WebSecurityRuntimeHints.class)
 public class DefaultConfigurations {
 
     @Bean
@@ -0,0 +1,28 @@
+package com.vapps.security.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HeaderConfig implements Field {
+
+    private String name;
+    private DataType type = DataType.STRING;
+    private boolean isMandatory;
+    private String regex;
+    private int minLength;
+    private int maxLength = Integer.MAX_VALUE;
+
+    /**
+     * If not empty the header should be one of these values. Parameters after ';' are ignored and the values are
+     * compared ignoring the case, so application/json allows "application/json; charset=UTF-8".
+     */
+    private List<String> allowedValues = new ArrayList<>();
+
+}
@@ -17,4 +17,12 @@ public class RequestBodyConfig {
     private RequestBodyType type = RequestBodyType.JSON;
     private List<RequestBodyField> fields = new ArrayList<>();
 
+    /**
+     * Limits applied while decompressing a gzip or deflate encoded body. The decompression is streamed, but the JSON
+     * body is still parsed into a json-simple object tree before it is validated, so a body of maxExpandedSize bytes
+     * can take several times that in heap. Keep maxExpandedSize close to the largest legitimate body.
+     */
+    private long maxExpandedSize = 10 * 1024 * 1024;
+    private int maxCompressionRatio = 100;
+
 }
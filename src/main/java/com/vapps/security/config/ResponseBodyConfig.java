@@ -0,0 +1,22 @@
+package com.vapps.security.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema of the JSON response of a URL. The response is validated while it is written, if the root is an array
+ * each element is validated against the fields.
+ */
+@Data
+public class ResponseBodyConfig {
+
+    private List<RequestBodyField> fields = new ArrayList<>();
+
+    /**
+     * If true the keys not present in the fields are removed from the response, otherwise they are only logged.
+     */
+    private boolean stripUnknownFields;
+
+}
@@ -0,0 +1,18 @@
+package com.vapps.security.config;
+
+import lombok.Data;
+
+/**
+ * Settings of the background executor validating the requests of the shadow routes.
+ */
+@Data
+public class ShadowValidationConfig {
+
+    private int threads = 1;
+
+    /**
+     * Maximum requests waiting for the validation. New requests are dropped when the queue is full.
+     */
+    private int queueCapacity = 1024;
+
+}
@@ -21,4 +21,29 @@ public class URLConfig {
     private int minLength;
     private int maxLength = Integer.MAX_VALUE;
 
+    /**
+     * If true the requests are not rejected, they are validated in the background and the rejections are only
+     * recorded. Used to try a new or stricter configuration in production.
+     */
+    private boolean shadow;
+
+    /**
+     * Schema of the JSON response. If null the response is not validated.
+     */
+    private ResponseBodyConfig responseBodyConfig;
+
+    private List<HeaderConfig> headers = new ArrayList<>();
+    private List<CookieConfig> cookies = new ArrayList<>();
+
+    public URLConfig(String path, List<URLParamConfig> params, List<PathVariable> pathVariables, HttpMethod method,
+                     RequestBodyConfig requestBodyConfig, int minLength, int maxLength) {
+        this.path = path;
+        this.params = params;
+        this.pathVariables = pathVariables;
+        this.method = method;
+        this.requestBodyConfig = requestBodyConfig;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
 }
@@ -1,5 +1,6 @@
 package com.vapps.security.config;
 
+import com.vapps.security.route.CompactRouteTable;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,5 +14,18 @@ import java.util.List;
 public class WebSecurityConfiguration {
 
     private List<URLConfig> urlConfigs = new ArrayList<>();
+    private ClientBlockingConfig clientBlockingConfig;
+    private ShadowValidationConfig shadowValidationConfig = new ShadowValidationConfig();
+
+    /**
+     * Compact form of the routes for very large configurations. Routes found here are matched before urlConfigs.
+     * Nothing sets it automatically, the application has to load the snapshot written by the RouteSnapshotCompiler
+     * with CompactRouteTable.loadSnapshot and set it here.
+     */
+    private CompactRouteTable routeTable;
+
+    public WebSecurityConfiguration(List<URLConfig> urlConfigs) {
+        this.urlConfigs = urlConfigs;
+    }
 
 }
@@ -41,6 +41,10 @@ public class CachedBodyHttpServletRequest extends HttpServletRequestWrapper {
         this.cachedBody = requestInputStream.readAllBytes();
     }
 
+    public byte[] getCachedBody() {
+        return cachedBody;
+    }
+
     @Override
     public ServletInputStream getInputStream() throws IOException {
         return new CachedBodyServletInputStream(this.cachedBody);
@@ -0,0 +1,130 @@
+package com.vapps.security.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Fixed size count-min sketch used to count the rejected requests of each client.
+ *
+ * The counters are kept in a single AtomicLongArray of width * depth cells so the memory stays the same
+ * whether we see ten clients or ten million. All the counts are halved once per decay interval so that a client
+ * which stopped sending invalid requests gets unblocked eventually.
+ */
+public class RejectionSketch {
+
+    /**
+     * Largest width which can be rounded up to a power of two without overflowing.
+     */
+    public static final int MAX_WIDTH = 1 << 30;
+
+    private final AtomicLongArray counters;
+    private final int widthMask;
+    private final int depth;
+    private final long decayIntervalNanos;
+    private final AtomicLong lastDecay;
+    private final LongSupplier nanoClock;
+
+    public RejectionSketch(int width, int depth, long decayIntervalMillis) {
+        this(width, depth, decayIntervalMillis, System::nanoTime);
+    }
+
+    RejectionSketch(int width, int depth, long decayIntervalMillis, LongSupplier nanoClock) {
+        String error = validate(width, depth, decayIntervalMillis);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        int roundedWidth = roundWidth(width);
+        this.widthMask = roundedWidth - 1;
+        this.depth = depth;
+        this.counters = new AtomicLongArray(roundedWidth * depth);
+        this.decayIntervalNanos = decayIntervalMillis * 1_000_000L;
+        this.nanoClock = nanoClock;
+        this.lastDecay = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Returns why the sketch can't be created with the given settings, or null if they are valid.
+     */
+    public static String validate(int width, int depth, long decayIntervalMillis) {
+        if (width <= 0 || depth <= 0) {
+            return "Width and depth of the sketch should be greater than 0";
+        }
+        if (width > MAX_WIDTH) {
+            return "Width of the sketch should not be greater than " + MAX_WIDTH;
+        }
+        if ((long) roundWidth(width) * depth > Integer.MAX_VALUE - 8) {
+            return "Width * depth of the sketch is too large";
+        }
+        // A zero interval would halve all the counters on every request.
+        if (decayIntervalMillis <= 0 || decayIntervalMillis > Long.MAX_VALUE / 1_000_000L) {
+            return "Decay interval of the sketch should be greater than 0 and at most "
+                    + Long.MAX_VALUE / 1_000_000L + " ms";
+        }
+        return null;
+    }
+
+    private static int roundWidth(int width) {
+        int roundedWidth = Integer.highestOneBit(width);
+        return roundedWidth < width ? roundedWidth << 1 : roundedWidth;
+    }
+
+    /**
+     * Adds one rejection for the given key and returns the new estimated count.
+     */
+    public long increment(String key) {
+        decayIfNeeded();
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.incrementAndGet(index(row, h1, h2)));
+        }
+        return min;
+    }
+
+    /**
+     * Returns the estimated rejection count for the given key. The estimate never under counts.
+     */
+    public long estimate(String key) {
+        decayIfNeeded();
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters.get(index(row, h1, h2)));
+        }
+        return min;
+    }
+
+    private int index(int row, int h1, int h2) {
+        return row * (widthMask + 1) + ((h1 + row * h2) & widthMask);
+    }
+
+    private void decayIfNeeded() {
+        long last = lastDecay.get();
+        long now = nanoClock.getAsLong();
+        if (now - last < decayIntervalNanos || !lastDecay.compareAndSet(last, now)) {
+            return;
+        }
+        // Only the thread which won the CAS halves the counters, others keep counting meanwhile.
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, value -> value >>> 1);
+        }
+    }
+
+    private long hash(String key) {
+        // 64 bit FNV-1a, the two halves are used as independent hashes for the rows.
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash | 1L << 32;
+    }
+}
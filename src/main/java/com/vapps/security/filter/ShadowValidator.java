@@ -0,0 +1,112 @@
+package com.vapps.security.filter;
+
+import com.vapps.security.config.ShadowValidationConfig;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.exception.AppException;
+import com.vapps.security.service.URLValidationService;
+import com.vapps.security.service.ValidationReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Validates the requests of the shadow routes in the background and records what would have been rejected.
+ *
+ * The hand off never blocks the request thread, if the bounded queue is full the request is dropped and counted as
+ * skipped in the report.
+ */
+public class ShadowValidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShadowValidator.class);
+
+    private final URLValidationService urlValidationService;
+    private final ThreadPoolExecutor executor;
+    private final ValidationReport report = new ValidationReport();
+
+    /**
+     * @throws IllegalArgumentException if the threads or the queue capacity is less than 1.
+     */
+    public ShadowValidator(URLValidationService urlValidationService, ShadowValidationConfig config) {
+        this(urlValidationService, new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(config.getQueueCapacity()), newThreadFactory()));
+    }
+
+    /**
+     * Uses the given executor, the requests it rejects are counted as skipped.
+     */
+    ShadowValidator(URLValidationService urlValidationService, ThreadPoolExecutor executor) {
+        this.urlValidationService = urlValidationService;
+        this.executor = executor;
+        executor.setRejectedExecutionHandler((runnable, pool) -> report.skipped());
+    }
+
+    /**
+     * Returns the validation error of the settings, or null if they are valid.
+     */
+    public static String validate(ShadowValidationConfig config) {
+        if (config.getThreads() < 1) {
+            return "threads should be at least 1";
+        }
+        if (config.getQueueCapacity() < 1) {
+            return "queueCapacity should be at least 1";
+        }
+        return null;
+    }
+
+    /**
+     * Hands off a copy of the request for the validation. The body is the cached body of the request, it is not
+     * modified after caching so it is shared instead of copied.
+     */
+    public void submit(URLConfig urlConfig, String servletPath, Map<String, String[]> params, String contentEncoding,
+                       byte[] body) {
+        // The parameter map is cleared by the container when the request is recycled, so taking a copy.
+        Map<String, String[]> paramsCopy = new HashMap<>(params);
+        executor.execute(() -> validate(urlConfig, servletPath, paramsCopy, contentEncoding, body));
+    }
+
+    /**
+     * Records a rejection found on the request thread, for example by the header validation.
+     */
+    public void rejected(URLConfig urlConfig, String servletPath, AppException ex) {
+        report.rejected(urlConfig.getMethod().name() + " " + urlConfig.getPath(), ex.getMessage());
+        LOGGER.info("Shadow validation would reject {} {}: {}", urlConfig.getMethod(), servletPath, ex.getMessage());
+    }
+
+    public ValidationReport getReport() {
+        return report;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "shadow-validation-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void validate(URLConfig urlConfig, String servletPath, Map<String, String[]> params,
+                          String contentEncoding, byte[] body) {
+        try {
+            urlValidationService.validateURL(urlConfig, servletPath, params, contentEncoding,
+                    () -> new ByteArrayInputStream(body));
+            report.accepted();
+        } catch (AppException ex) {
+            rejected(urlConfig, servletPath, ex);
+        } catch (RuntimeException ex) {
+            LOGGER.error(ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.vapps.security.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.RequestBodyField;
+import com.vapps.security.config.ResponseBodyConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Validates a JSON document against the ResponseBodyConfig while its bytes are fed, using the non blocking Jackson
+ * parser. Only the current path of the document is kept in memory, never the whole document.
+ *
+ * If the unknown fields are stripped, the tokens are written again to the output with the unknown fields left out,
+ * otherwise the caller writes the original bytes and this only validates. While stripping, the input bytes of the
+ * token being read are kept, so they can be written as they are if the response turns out not to be a valid JSON.
+ * The bytes of a skipped unknown field are dropped as they are read, however large the field is.
+ */
+class StreamingJsonValidator {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingJsonValidator.class);
+
+    private final ResponseBodyConfig config;
+    private final String path;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final JsonGenerator generator;
+    private final OutputStream out;
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private byte[] pending;
+    private int pendingLength;
+    private long pendingOffset;
+    private long consumedOffset;
+
+    private RequestBodyField pendingField;
+    private boolean skipValue;
+    private int skipDepth;
+    private boolean failed;
+    private int violations;
+
+    StreamingJsonValidator(ResponseBodyConfig config, String path, OutputStream out) throws IOException {
+        this.config = config;
+        this.path = path;
+        this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.out = out;
+        if (config.isStripUnknownFields()) {
+            generator = JSON_FACTORY.createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        } else {
+            generator = null;
+        }
+    }
+
+    boolean isStripping() {
+        return generator != null;
+    }
+
+    /**
+     * Returns true if the response is not a valid JSON. The validation is stopped, the input which was not written
+     * again yet has been written as it is, and the caller should write the rest of the response as it is.
+     */
+    boolean isFailed() {
+        return failed;
+    }
+
+    void feed(byte[] bytes, int offset, int length) throws IOException {
+        feeder.feedInput(bytes, offset, offset + length);
+        drain(bytes, offset, length);
+        if (generator != null && !failed) {
+            keepUnconsumed(bytes, offset, length);
+        }
+    }
+
+    void flush() throws IOException {
+        if (generator != null) {
+            generator.flush();
+        }
+    }
+
+    void finish() throws IOException {
+        if (!failed) {
+            feeder.endOfInput();
+            drain(NO_BYTES, 0, 0);
+        }
+        flush();
+        if (violations > 1) {
+            LOGGER.warn("Response of {} had {} schema violations", path, violations);
+        }
+    }
+
+    private void drain(byte[] bytes, int offset, int length) throws IOException {
+        try {
+            JsonToken token = parser.nextToken();
+            while (token != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+                if (generator != null) {
+                    // Written again or skipped, either way these bytes are not needed any more.
+                    consumedOffset = parser.currentLocation().getByteOffset();
+                }
+                token = parser.nextToken();
+            }
+        } catch (JsonProcessingException e) {
+            failed = true;
+            flush();
+            writeUnconsumed(bytes, offset, length);
+            LOGGER.warn("Response of {} is not a valid JSON, stopped validating it: {}", path,
+                    e.getOriginalMessage());
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        if (skipDepth > 0) {
+            if (token.isStructStart()) {
+                skipDepth++;
+            } else if (token.isStructEnd()) {
+                skipDepth--;
+            }
+            return;
+        }
+        if (skipValue) {
+            skipValue = false;
+            if (token.isStructStart()) {
+                skipDepth = 1;
+            }
+            return;
+        }
+        switch (token) {
+            case FIELD_NAME -> {
+                Frame frame = frames.peek();
+                String name = parser.currentName();
+                pendingField = null;
+                if (frame != null && frame.fields != null) {
+                    pendingField = findField(frame.fields, name);
+                    if (pendingField == null) {
+                        violation("Key " + name + " is not allowed!");
+                        if (generator != null) {
+                            skipValue = true;
+                            return;
+                        }
+                    }
+                    frame.seen.add(name);
+                }
+            }
+            case START_OBJECT -> frames.push(Frame.object(startObject()));
+            case START_ARRAY -> frames.push(startArray());
+            case END_OBJECT -> {
+                Frame frame = frames.pop();
+                if (frame.fields != null) {
+                    for (RequestBodyField field : frame.fields) {
+                        if (field.isMandatory() && !frame.seen.contains(field.getKey())) {
+                            violation(field.getKey() + " is mandatory!");
+                        }
+                    }
+                }
+            }
+            case END_ARRAY -> frames.pop();
+            default -> validateScalar(token);
+        }
+        if (generator != null) {
+            // The exact copy keeps the decimals as they are, instead of converting them to a double.
+            generator.copyCurrentEventExact(parser);
+        }
+    }
+
+    /**
+     * Keeps the input after the last token read, which is the start of the token being read. The pending bytes
+     * are followed by the given bytes in the input.
+     */
+    private void keepUnconsumed(byte[] bytes, int offset, int length) {
+        long bytesOffset = pendingOffset + pendingLength;
+        if (consumedOffset >= bytesOffset) {
+            int consumed = (int) (consumedOffset - bytesOffset);
+            pendingLength = 0;
+            append(bytes, offset + consumed, length - consumed);
+        } else {
+            int consumed = (int) (consumedOffset - pendingOffset);
+            System.arraycopy(pending, consumed, pending, 0, pendingLength - consumed);
+            pendingLength -= consumed;
+            append(bytes, offset, length);
+        }
+        pendingOffset = consumedOffset;
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (pending == null) {
+            pending = new byte[Math.max(256, length)];
+        } else if (pendingLength + length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+        }
+        System.arraycopy(bytes, offset, pending, pendingLength, length);
+        pendingLength += length;
+    }
+
+    /**
+     * Writes the input after the last token read as it is, so nothing after the point where the parser failed is
+     * lost. The pending bytes are followed by the given bytes in the input.
+     */
+    private void writeUnconsumed(byte[] bytes, int offset, int length) throws IOException {
+        if (generator == null) {
+            return;
+        }
+        long bytesOffset = pendingOffset + pendingLength;
+        if (consumedOffset < bytesOffset) {
+            int consumed = (int) (consumedOffset - pendingOffset);
+            out.write(pending, consumed, pendingLength - consumed);
+            out.write(bytes, offset, length);
+        } else {
+            int consumed = (int) (consumedOffset - bytesOffset);
+            out.write(bytes, offset + consumed, length - consumed);
+        }
+        pending = null;
+        pendingLength = 0;
+    }
+
+    private List<RequestBodyField> startObject() {
+        Frame parent = frames.peek();
+        if (parent == null) {
+            return config.getFields();
+        }
+        if (parent.isArray) {
+            if (parent.elementType != null) {
+                violation("Invalid JSON Array for key " + getKey(parent.arrayField));
+            }
+            return parent.elementFields;
+        }
+        RequestBodyField field = pendingField;
+        pendingField = null;
+        if (field == null) {
+            return null;
+        }
+        if (field.getType() != DataType.JSON_OBJECT) {
+            violation("Invalid value for key " + field.getKey());
+            return null;
+        }
+        return field.getChildren();
+    }
+
+    private Frame startArray() {
+        Frame parent = frames.peek();
+        if (parent == null) {
+            // A root array is a list of the objects described by the fields, for example a page of results.
+            return Frame.array(config.getFields(), null, null);
+        }
+        if (parent.isArray) {
+            if (parent.elementFields != null || parent.elementType != null) {
+                violation("Invalid JSON Array for key " + getKey(parent.arrayField));
+            }
+            return Frame.array(null, null, null);
+        }
+        RequestBodyField field = pendingField;
+        pendingField = null;
+        if (field == null) {
+            return Frame.array(null, null, null);
+        }
+        return switch (field.getType()) {
+            case JSON_ARRAY_OF_OBJECT -> Frame.array(field.getChildren(), null, field);
+            case JSON_ARRAY_INT -> Frame.array(null, DataType.INTEGER, field);
+            case JSON_ARRAY_LONG -> Frame.array(null, DataType.LONG, field);
+            case JSON_ARRAY_STRING -> Frame.array(null, DataType.STRING, field);
+            case JSON_ARRAY_REGEX -> Frame.array(null, DataType.REGEX, field);
+            default -> {
+                violation("Invalid value for key " + field.getKey());
+                yield Frame.array(null, null, null);
+            }
+        };
+    }
+
+    private void validateScalar(JsonToken token) throws IOException {
+        Frame parent = frames.peek();
+        if (parent == null) {
+            return;
+        }
+        RequestBodyField field;
+        DataType type;
+        if (parent.isArray) {
+            field = parent.arrayField;
+            type = parent.elementType;
+            if (parent.elementFields != null) {
+                violation("Invalid JSON Array of objects for key " + getKey(field));
+                return;
+            }
+        } else {
+            field = pendingField;
+            type = field == null ? null : field.getType();
+            pendingField = null;
+        }
+        if (type == null) {
+            return;
+        }
+        if (token == JsonToken.VALUE_NULL) {
+            if (field.isMandatory()) {
+                violation("Null value given for " + field.getKey());
+            }
+            return;
+        }
+        String text = parser.getText();
+        boolean valid = switch (type) {
+            case INTEGER -> token == JsonToken.VALUE_NUMBER_INT
+                    && parser.getNumberType() == JsonParser.NumberType.INT;
+            case LONG -> token == JsonToken.VALUE_NUMBER_INT
+                    && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER;
+            case BOOLEAN -> token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE;
+            case STRING -> text.length() >= field.getMinLength() && text.length() <= field.getMaxLength();
+            case REGEX -> Pattern.matches(field.getRegex(), text);
+            default -> false;
+        };
+        if (!valid) {
+            violation("Invalid value for key " + field.getKey());
+        }
+    }
+
+    private String getKey(RequestBodyField field) {
+        return field == null ? "<root>" : field.getKey();
+    }
+
+    private RequestBodyField findField(List<RequestBodyField> fields, String name) {
+        for (RequestBodyField field : fields) {
+            if (field.getKey().equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private void violation(String message) {
+        violations++;
+        if (violations == 1) {
+            LOGGER.warn("Response of {} does not match the schema: {}", path, message);
+        } else {
+            LOGGER.debug("Response of {} does not match the schema: {}", path, message);
+        }
+    }
+
+    private static class Frame {
+
+        private boolean isArray;
+        private List<RequestBodyField> fields;
+        private Set<String> seen;
+        private List<RequestBodyField> elementFields;
+        private DataType elementType;
+        private RequestBodyField arrayField;
+
+        static Frame object(List<RequestBodyField> fields) {
+            Frame frame = new Frame();
+            frame.fields = fields;
+            frame.seen = fields == null ? null : new HashSet<>();
+            return frame;
+        }
+
+        static Frame array(List<RequestBodyField> elementFields, DataType elementType, RequestBodyField arrayField) {
+            Frame frame = new Frame();
+            frame.isArray = true;
+            frame.elementFields = elementFields;
+            frame.elementType = elementType;
+            frame.arrayField = arrayField;
+            return frame;
+        }
+    }
+}
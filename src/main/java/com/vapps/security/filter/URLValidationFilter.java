@@ -1,12 +1,18 @@
 package com.vapps.security.filter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.ClientBlockingConfig;
 import com.vapps.security.config.PathVariable;
+import com.vapps.security.config.ShadowValidationConfig;
 import com.vapps.security.config.URLConfig;
 import com.vapps.security.config.WebSecurityConfiguration;
 import com.vapps.security.dto.ErrorResponse;
 import com.vapps.security.exception.AppException;
+import com.vapps.security.jfr.ValidationStage;
+import com.vapps.security.jfr.ValidationStageEvent;
 import com.vapps.security.service.URLValidationService;
+import com.vapps.security.service.ValidationReport;
+import com.vapps.security.util.PathPatternUtil;
 import com.vapps.security.util.RequestUtil;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletRequest;
@@ -14,16 +20,16 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.web.util.UrlPathHelper;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 @Component
@@ -35,11 +41,12 @@ public class URLValidationFilter implements Filter {
     @Autowired(required = false)
     private WebSecurityConfiguration securityConfig;
 
-    @Autowired
-    private AntPathMatcher antPathMatcher;
-
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private RejectionSketch rejectionSketch;
+
+    private ShadowValidator shadowValidator;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(URLValidationFilter.class);
 
     @Override
@@ -50,6 +57,19 @@ public class URLValidationFilter implements Filter {
         }
         validateURLConfigurations();
         LOGGER.info("Validated security configurations!");
+        if (securityConfig.getRouteTable() != null) {
+            LOGGER.info("Loaded compact route table with {} routes, retained heap {} bytes per route",
+                    securityConfig.getRouteTable().size(), securityConfig.getRouteTable().getRetainedBytesPerRoute());
+        }
+
+        ClientBlockingConfig blockingConfig = securityConfig.getClientBlockingConfig();
+        if (blockingConfig != null) {
+            rejectionSketch = new RejectionSketch(blockingConfig.getWidth(), blockingConfig.getDepth(),
+                    blockingConfig.getDecayIntervalMillis());
+        }
+        ShadowValidationConfig shadowConfig = securityConfig.getShadowValidationConfig();
+        shadowValidator = new ShadowValidator(urlValidationService,
+                shadowConfig != null ? shadowConfig : new ShadowValidationConfig());
     }
 
     @Override
@@ -61,34 +81,162 @@ public class URLValidationFilter implements Filter {
         }
         HttpServletRequest request = (HttpServletRequest) servletRequest;
         HttpServletResponse response = (HttpServletResponse) servletResponse;
+        String clientKey = getClientKey(request);
+        if (clientKey != null && rejectionSketch.estimate(clientKey) >= securityConfig.getClientBlockingConfig()
+                .getRejectionThreshold()) {
+            writeErrorResponse(request, response, HttpStatus.TOO_MANY_REQUESTS.value(),
+                    "Too many invalid requests!");
+            return;
+        }
         try {
+            String servletPath = RequestUtil.getServletPath(request);
+            URLConfig urlConfig = urlValidationService.resolveConfig(servletPath, request.getMethod());
+            // The headers are checked before the body is read, so an invalid request doesn't cost the buffering.
+            boolean shadowRejected = false;
+            if (urlConfig.isShadow()) {
+                try {
+                    urlValidationService.validateHeaders(request, urlConfig);
+                } catch (AppException ex) {
+                    shadowValidator.rejected(urlConfig, servletPath, ex);
+                    shadowRejected = true;
+                }
+            } else {
+                urlValidationService.validateHeaders(request, urlConfig);
+            }
             /**
              * Using a cached request because if I use the InputStream directly from the request and pass the
              * same request the Filter chain. Then when SpringBoot try to read the InputStream it will get
              * -1 because we have already read it.
              */
+            ValidationStageEvent event = ValidationStageEvent.start(ValidationStage.BODY_BUFFERING,
+                    urlConfig.getPath());
             CachedBodyHttpServletRequest cachedBodyHttpServletRequest = new CachedBodyHttpServletRequest(request);
-            urlValidationService.validateURL(cachedBodyHttpServletRequest);
+            event.setBodySize(cachedBodyHttpServletRequest.getCachedBody().length);
+            event.finish();
+            if (urlConfig.isShadow()) {
+                // A request already rejected by the header validation is not validated again, so each request has
+                // a single outcome in the shadow report.
+                if (!shadowRejected) {
+                    shadowValidator.submit(urlConfig, servletPath, cachedBodyHttpServletRequest.getParameterMap(),
+                            request.getHeader(HttpHeaders.CONTENT_ENCODING),
+                            cachedBodyHttpServletRequest.getCachedBody());
+                }
+            } else {
+                urlValidationService.validateURL(cachedBodyHttpServletRequest, urlConfig);
+            }
 
-            filterChain.doFilter(cachedBodyHttpServletRequest, servletResponse);
+            if (urlConfig.getResponseBodyConfig() == null) {
+                filterChain.doFilter(cachedBodyHttpServletRequest, servletResponse);
+            } else {
+                ValidatingHttpServletResponse validatingResponse = new ValidatingHttpServletResponse(response,
+                        urlConfig.getResponseBodyConfig(), servletPath);
+                filterChain.doFilter(cachedBodyHttpServletRequest, validatingResponse);
+                if (cachedBodyHttpServletRequest.isAsyncStarted()) {
+                    // The body is written later by another thread, for example for a StreamingResponseBody or a
+                    // DeferredResult, so the validation is completed with the async request.
+                    cachedBodyHttpServletRequest.getAsyncContext().addListener(
+                            new FinishingAsyncListener(validatingResponse));
+                } else {
+                    validatingResponse.finish();
+                }
+            }
         } catch (AppException ex) {
-            response.setStatus(ex.getStatus());
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
+            if (clientKey != null) {
+                rejectionSketch.increment(clientKey);
+            }
+            writeErrorResponse(request, response, ex.getStatus(), ex.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (shadowValidator != null) {
+            shadowValidator.shutdown();
+        }
+    }
 
-            ErrorResponse errorResponse = new ErrorResponse();
-            errorResponse.setError(ex.getMessage());
-            errorResponse.setStatus(ex.getStatus());
-            errorResponse.setPath(RequestUtil.getServletPath(request));
-            errorResponse.setTime(LocalDateTime.now().toString());
+    /**
+     * Returns what the shadow routes would have rejected so far, or null if the filter is not initialized.
+     */
+    public ValidationReport getShadowReport() {
+        return shadowValidator == null ? null : shadowValidator.getReport();
+    }
+
+    private void writeErrorResponse(HttpServletRequest request, HttpServletResponse response, int status,
+                                    String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
 
-            response.getWriter().println(objectMapper.writeValueAsString(errorResponse));
+        ErrorResponse errorResponse = new ErrorResponse();
+        errorResponse.setError(message);
+        errorResponse.setStatus(status);
+        errorResponse.setPath(RequestUtil.getServletPath(request));
+        errorResponse.setTime(LocalDateTime.now().toString());
+
+        response.getWriter().println(objectMapper.writeValueAsString(errorResponse));
+    }
+
+    /**
+     * Returns the key used to track the rejections of the client or null if client blocking is not enabled. For a
+     * header with a list of values like "client, proxy1" the last value is used, it is the one added by the proxy
+     * closest to the application.
+     */
+    private String getClientKey(HttpServletRequest request) {
+        if (rejectionSketch == null) {
+            return null;
+        }
+        String header = securityConfig.getClientBlockingConfig().getClientKeyHeader();
+        if (header != null) {
+            String value = request.getHeader(header);
+            if (value != null) {
+                int separator = value.lastIndexOf(',');
+                String key = separator == -1 ? value.trim() : value.substring(separator + 1).trim();
+                if (!key.isEmpty()) {
+                    return key;
+                }
+            }
         }
+        return request.getRemoteAddr();
     }
 
     private void validateURLConfigurations() {
         checkDuplicateURLConfigs();
         validatePathVariables();
+        validateClientBlockingConfig();
+        validateShadowValidationConfig();
+    }
+
+    private void validateClientBlockingConfig() {
+        ClientBlockingConfig blockingConfig = securityConfig.getClientBlockingConfig();
+        if (blockingConfig == null) {
+            return;
+        }
+        if (blockingConfig.getRejectionThreshold() <= 0) {
+            LOGGER.error("Rejection threshold of the client blocking config should be greater than 0, given {}",
+                    blockingConfig.getRejectionThreshold());
+            exit();
+        }
+        String error = RejectionSketch.validate(blockingConfig.getWidth(), blockingConfig.getDepth(),
+                blockingConfig.getDecayIntervalMillis());
+        if (error != null) {
+            LOGGER.error("Invalid client blocking config: {} (width {}, depth {}, decayIntervalMillis {})", error,
+                    blockingConfig.getWidth(), blockingConfig.getDepth(), blockingConfig.getDecayIntervalMillis());
+            exit();
+        }
+    }
+
+    private void validateShadowValidationConfig() {
+        ShadowValidationConfig shadowConfig = securityConfig.getShadowValidationConfig();
+        if (shadowConfig == null) {
+            return;
+        }
+        String error = ShadowValidator.validate(shadowConfig);
+        if (error != null) {
+            LOGGER.error("Invalid shadow validation config: {} (threads {}, queueCapacity {})", error,
+                    shadowConfig.getThreads(), shadowConfig.getQueueCapacity());
+            exit();
+        }
     }
 
     private void checkDuplicateURLConfigs() {
@@ -117,17 +265,7 @@ public class URLValidationFilter implements Filter {
     }
 
     public Set<String> getPathVariableNames(String pathPattern) {
-        // Creating a dummy path to extract variable names
-        String dummyPath = createDummyPath(pathPattern);
-
-        // Extracting path variables
-        Map<String, String> pathVariables = antPathMatcher.extractUriTemplateVariables(pathPattern, dummyPath);
-
-        return pathVariables.keySet();
-    }
-
-    private String createDummyPath(String pathPattern) {
-        return pathPattern.replaceAll("\\{[^/]+\\}", "dummy");
+        return PathPatternUtil.getVariableNames(pathPattern);
     }
 
     private String generateUniqueKey(String path, HttpMethod method) {
@@ -137,4 +275,32 @@ public class URLValidationFilter implements Filter {
     private void exit() {
         System.exit(1);
     }
+
+    private static class FinishingAsyncListener implements AsyncListener {
+
+        private final ValidatingHttpServletResponse response;
+
+        FinishingAsyncListener(ValidatingHttpServletResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            response.finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // The listeners are cleared when the async request is started again, so this adds itself back.
+            event.getAsyncContext().addListener(this);
+        }
+    }
 }
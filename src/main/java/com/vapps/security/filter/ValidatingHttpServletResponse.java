@@ -0,0 +1,246 @@
+package com.vapps.security.filter;
+
+import com.vapps.security.config.ResponseBodyConfig;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.HttpHeaders;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * Validates the JSON response against the ResponseBodyConfig of the URL while it is written. Nothing is buffered
+ * other than the bytes of the current token, so large responses are streamed to the client as before.
+ *
+ * The response can't be rejected once it is streaming, so the violations are logged. If the unknown fields are
+ * stripped the Content-Length set by the application is dropped since the length changes. A response with a
+ * Content-Encoding is written as it is, since its bytes are not JSON until they are decoded.
+ */
+public class ValidatingHttpServletResponse extends HttpServletResponseWrapper {
+
+    private final ResponseBodyConfig config;
+    private final String path;
+    private ValidatingServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    public ValidatingHttpServletResponse(HttpServletResponse response, ResponseBodyConfig config, String path) {
+        super(response);
+        this.config = config;
+        this.path = path;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (outputStream == null) {
+            outputStream = new ValidatingServletOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            outputStream = new ValidatingServletOutputStream(super.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (outputStream != null) {
+            outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    /**
+     * Discards the validation of what was written so far along with the buffer, for example when Spring resets the
+     * response to write an error instead.
+     */
+    @Override
+    public void reset() {
+        discardValidation();
+        super.reset();
+    }
+
+    @Override
+    public void resetBuffer() {
+        discardValidation();
+        super.resetBuffer();
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        if (!config.isStripUnknownFields()) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (!config.isStripUnknownFields()) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!isStrippedContentLength(name)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!isStrippedContentLength(name)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!isStrippedContentLength(name)) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!isStrippedContentLength(name)) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Completes the validation of the response. Called by the filter after the filter chain, or once the async
+     * request completes if the response is written asynchronously.
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    private void discardValidation() {
+        if (outputStream != null) {
+            outputStream.discard();
+        }
+    }
+
+    private boolean isStrippedContentLength(String name) {
+        return config.isStripUnknownFields() && HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+    }
+
+    private class ValidatingServletOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream out;
+        private StreamingJsonValidator validator;
+        private boolean started;
+        private boolean finished;
+        private boolean discarding;
+
+        ValidatingServletOutputStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (discarding) {
+                return;
+            }
+            if (!started) {
+                // The content type is known only once the application starts writing the body.
+                started = true;
+                String contentType = getContentType();
+                String contentEncoding = getHeader(HttpHeaders.CONTENT_ENCODING);
+                if (contentType != null && contentType.contains("json")
+                        && (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding))) {
+                    validator = new StreamingJsonValidator(config, path, out);
+                }
+            }
+            if (validator == null || finished || validator.isFailed()) {
+                out.write(b, off, len);
+                return;
+            }
+            if (!validator.isStripping()) {
+                out.write(b, off, len);
+            }
+            validator.feed(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (discarding) {
+                return;
+            }
+            if (validator != null && !finished) {
+                validator.flush();
+            }
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            out.close();
+        }
+
+        /**
+         * Drops what was written so far, including the characters still buffered by the writer, and starts the
+         * validation again with the next write. Nothing is flushed, so the response is not committed.
+         */
+        void discard() {
+            discarding = true;
+            try {
+                if (writer != null) {
+                    writer.flush();
+                }
+            } finally {
+                discarding = false;
+            }
+            validator = null;
+            started = false;
+            finished = false;
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (validator != null) {
+                validator.finish();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
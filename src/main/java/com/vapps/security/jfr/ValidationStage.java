@@ -0,0 +1,12 @@
+package com.vapps.security.jfr;
+
+public enum ValidationStage {
+
+    CONFIG_LOOKUP,
+    HEADERS,
+    REQUEST_PARAMS,
+    PATH_VARIABLES,
+    BODY_BUFFERING,
+    BODY_VALIDATION
+
+}
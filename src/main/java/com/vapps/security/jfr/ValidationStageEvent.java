@@ -0,0 +1,75 @@
+package com.vapps.security.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a single stage of the URL validation.
+ *
+ * Disabled by default, so it costs close to nothing unless a recording is started with the bundled
+ * jfr/web-security.jfc settings (or the event is enabled in a custom settings file).
+ */
+@Name("com.vapps.security.ValidationStage")
+@Label("Validation Stage")
+@Category({"Web Security", "URL Validation"})
+@Description("Time taken by a stage of the URL validation")
+@StackTrace(false)
+@Enabled(false)
+@Threshold("1 ms")
+public class ValidationStageEvent extends Event {
+
+    @Label("Stage")
+    private String stage;
+
+    @Label("Route Pattern")
+    private String routePattern;
+
+    @Label("Body Size")
+    @DataAmount
+    private long bodySize = -1;
+
+    @Label("Outcome")
+    private String outcome = "ACCEPTED";
+
+    @Label("Status")
+    private int status;
+
+    public static ValidationStageEvent start(ValidationStage stage, String routePattern) {
+        ValidationStageEvent event = new ValidationStageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage.name();
+            event.routePattern = routePattern;
+            event.begin();
+        }
+        return event;
+    }
+
+    public void setRoutePattern(String routePattern) {
+        this.routePattern = routePattern;
+    }
+
+    public void setBodySize(long bodySize) {
+        this.bodySize = bodySize;
+    }
+
+    public void reject(int status) {
+        this.outcome = "REJECTED";
+        this.status = status;
+    }
+
+    /**
+     * Commits the event only if it is enabled and crossed the configured threshold.
+     */
+    public void finish() {
+        if (shouldCommit()) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package com.vapps.security.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.DefaultConfigurations;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.exception.AppException;
+import com.vapps.security.service.URLValidationService;
+import com.vapps.security.service.URLValidationService.RequestBodySource;
+import com.vapps.security.service.ValidationReport;
+import com.vapps.security.util.RequestUtil;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.util.UriUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool which replays recorded traffic through the same URLValidationService used by the filter and
+ * reports which requests would be rejected by a WebSecurityConfiguration. No servlet container is started.
+ *
+ * Usage: java -cp &lt;classpath&gt; com.vapps.security.replay.AccessLogReplay --config=security.json
+ * [--format=access-log|ndjson] [--context-path=/app] [--threads=N] &lt;log-file&gt;...
+ *
+ * The config file is the JSON form of WebSecurityConfiguration. The access-log format reads the request line of
+ * common/combined log lines. The ndjson format reads one JSON object per line with method, url and body
+ * (postData.text is also accepted so HAR entries can be replayed after extracting the requests with
+ * jq -c '.log.entries[].request').
+ *
+ * Access log lines have no body, so the request body of those lines is not validated. Lines which can't be decoded,
+ * like a query with a malformed escape, are counted as skipped.
+ */
+public class AccessLogReplay {
+
+    public enum LogFormat {
+        ACCESS_LOG,
+        NDJSON
+    }
+
+    /**
+     * Maximum bytes mapped at once. A file larger than this is processed as multiple chunks.
+     */
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+
+    private final URLValidationService urlValidationService;
+    private final LogFormat format;
+    private final String contextPath;
+    private final int threads;
+    private final long maxChunkSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @throws IllegalArgumentException if threads is less than 1.
+     */
+    public AccessLogReplay(URLValidationService urlValidationService, LogFormat format, String contextPath,
+                           int threads) {
+        this(urlValidationService, format, contextPath, threads, MAX_CHUNK_SIZE);
+    }
+
+    AccessLogReplay(URLValidationService urlValidationService, LogFormat format, String contextPath, int threads,
+                    long maxChunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads should be at least 1, given " + threads);
+        }
+        this.urlValidationService = urlValidationService;
+        this.format = format;
+        this.contextPath = contextPath;
+        this.threads = threads;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String configFile = null;
+        LogFormat format = LogFormat.ACCESS_LOG;
+        String contextPath = "";
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> logFiles = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                configFile = arg.substring("--config=".length());
+            } else if (arg.startsWith("--format=")) {
+                format = LogFormat.valueOf(arg.substring("--format=".length()).toUpperCase().replace('-', '_'));
+            } else if (arg.startsWith("--context-path=")) {
+                contextPath = arg.substring("--context-path=".length());
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    threads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+            } else {
+                logFiles.add(Path.of(arg));
+            }
+        }
+        if (configFile == null || logFiles.isEmpty() || threads < 1) {
+            System.err.println("Usage: AccessLogReplay --config=<security.json> [--format=access-log|ndjson] "
+                    + "[--context-path=/app] [--threads=N] <log-file>...");
+            System.exit(2);
+        }
+
+        WebSecurityConfiguration securityConfig = new ObjectMapper().readValue(Path.of(configFile).toFile(),
+                WebSecurityConfiguration.class);
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ReplayBeans.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties("logging.level.com.vapps.security.service=OFF")
+                .initializers(ctx -> ctx.getBeanFactory().registerSingleton("webSecurityConfiguration",
+                        securityConfig))
+                .run()) {
+            AccessLogReplay replay = new AccessLogReplay(context.getBean(URLValidationService.class), format,
+                    contextPath, threads);
+            ValidationReport report = new ValidationReport();
+            long start = System.nanoTime();
+            for (Path logFile : logFiles) {
+                replay.replay(logFile, report);
+            }
+            report.print(System.out);
+            System.out.printf("Completed in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    /**
+     * Splits the file into line aligned chunks, memory maps each chunk and validates them in parallel.
+     */
+    public void replay(Path logFile, ValidationReport report) throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            List<Future<?>> futures = new ArrayList<>();
+            List<Long> boundaries = getChunkBoundaries(channel);
+            for (int i = 0; i < boundaries.size() - 1; i++) {
+                long start = boundaries.get(i);
+                long end = boundaries.get(i + 1);
+                futures.add(executor.submit(() -> {
+                    replayChunk(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), report);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Error while replaying " + logFile, e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<Long> getChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunks = Math.max(threads * 4L, (size + maxChunkSize - 1) / maxChunkSize);
+        long chunkSize = Math.min(maxChunkSize, Math.max(1, size / chunks));
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        long position = chunkSize;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            // Moving the boundary to the start of the next line so that no line is split between two chunks.
+            long lineStart = -1;
+            while (lineStart == -1 && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lineStart = position + i + 1;
+                        break;
+                    }
+                }
+                if (lineStart == -1) {
+                    position += read;
+                }
+            }
+            if (lineStart == -1 || lineStart >= size) {
+                break;
+            }
+            boundaries.add(lineStart);
+            position = lineStart + chunkSize;
+        }
+        boundaries.add(size);
+        return boundaries;
+    }
+
+    private void replayChunk(MappedByteBuffer buffer, ValidationReport report) {
+        byte[] line = new byte[1024];
+        int length = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                replayLine(new String(line, 0, length, StandardCharsets.UTF_8), report);
+                length = 0;
+                continue;
+            }
+            if (b == '\r') {
+                continue;
+            }
+            if (length == line.length) {
+                byte[] grown = new byte[line.length * 2];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length++] = b;
+        }
+        if (length > 0) {
+            replayLine(new String(line, 0, length, StandardCharsets.UTF_8), report);
+        }
+    }
+
+    private void replayLine(String line, ValidationReport report) {
+        if (line.isBlank()) {
+            return;
+        }
+        String method;
+        String target;
+        String body = null;
+        try {
+            if (format == LogFormat.NDJSON) {
+                JsonNode node = objectMapper.readTree(line);
+                method = node.path("method").asText(null);
+                target = node.path("url").asText(null);
+                JsonNode bodyNode = node.has("body") ? node.get("body") : node.path("postData").get("text");
+                if (bodyNode != null && !bodyNode.isNull()) {
+                    body = bodyNode.isTextual() ? bodyNode.asText() : bodyNode.toString();
+                }
+            } else {
+                int quoteStart = line.indexOf('"');
+                int quoteEnd = line.indexOf('"', quoteStart + 1);
+                if (quoteStart == -1 || quoteEnd == -1) {
+                    report.skipped();
+                    return;
+                }
+                String[] requestLine = line.substring(quoteStart + 1, quoteEnd).split(" ");
+                method = requestLine[0];
+                target = requestLine.length > 1 ? requestLine[1] : null;
+            }
+        } catch (IOException e) {
+            report.skipped();
+            return;
+        }
+        if (method == null || target == null) {
+            report.skipped();
+            return;
+        }
+        replayRequest(method, target, body, report);
+    }
+
+    private void replayRequest(String method, String target, String body, ValidationReport report) {
+        int schemeIndex = target.indexOf("://");
+        if (schemeIndex != -1) {
+            int pathIndex = target.indexOf('/', schemeIndex + 3);
+            target = pathIndex == -1 ? "/" : target.substring(pathIndex);
+        }
+        int queryIndex = target.indexOf('?');
+        String path;
+        String query = queryIndex == -1 ? null : target.substring(queryIndex + 1);
+        Map<String, String[]> params;
+        try {
+            path = UriUtils.decode(queryIndex == -1 ? target : target.substring(0, queryIndex),
+                    StandardCharsets.UTF_8);
+            // Malformed escapes like %zz are common in scanner traffic, the line is skipped instead of failing
+            // the whole run.
+            params = RequestUtil.parseQueryString(query);
+        } catch (IllegalArgumentException e) {
+            report.skipped();
+            return;
+        }
+        if (!contextPath.isEmpty() && path.startsWith(contextPath)) {
+            path = path.substring(contextPath.length());
+        }
+        // Access logs don't record the body, so the body validation is skipped instead of failing on empty input.
+        RequestBodySource bodySource = body == null ? null
+                : () -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        try {
+            urlValidationService.validateURL(path, method, params, null, bodySource);
+            report.accepted();
+        } catch (AppException ex) {
+            report.rejected(getRoute(path, method), ex.getMessage());
+        } catch (RuntimeException ex) {
+            report.rejected(getRoute(path, method), "Unexpected error: " + ex.getClass().getSimpleName());
+        }
+    }
+
+    private String getRoute(String path, String method) {
+        return urlValidationService.getConfig(path, method)
+                .map(config -> config.getMethod().name() + " " + config.getPath()).orElse("<no route>");
+    }
+
+    /**
+     * Beans needed for the validation. Not annotated with @Configuration so that the component scan of the
+     * application doesn't pick it up.
+     */
+    @Import({DefaultConfigurations.class, URLValidationService.class})
+    static class ReplayBeans {
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+}
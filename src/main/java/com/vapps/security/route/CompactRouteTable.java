@@ -0,0 +1,1096 @@
+package com.vapps.security.route;
+
+import com.vapps.security.config.*;
+import com.vapps.security.config.RequestBodyConfig.RequestBodyType;
+import com.vapps.security.util.PathPatternUtil;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+
+/**
+ * Memory compact, read only form of a large list of URLConfig.
+ *
+ * Path segments, field names and regexes are interned into a single string pool. Identical field lists and
+ * request body configs are stored once and shared by all the routes using them. Routes, patterns and fields are
+ * kept as packed primitive arrays instead of object graphs, so a simple route costs a few ints. The pattern string
+ * itself is kept only for the wildcard patterns and the ones which can't be rebuilt from their segments.
+ *
+ * Plain patterns are matched segment by segment, which is what the default AntPathMatcher does. If the given
+ * matcher is configured differently (case insensitive, trimmed tokens or another separator) every route is
+ * matched with it instead, which is much slower on large tables.
+ *
+ * The URLConfig returned by {@link #getRoute(int)} is created on demand, its params, path variables, headers,
+ * cookies and request body config are shared between routes and should be treated as read only.
+ */
+public class CompactRouteTable {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int NONE = -1;
+
+    private static final byte MANDATORY = 1;
+    private static final byte MULTIPLE = 2;
+    private static final byte OPTIONAL = 4;
+
+    private static final byte SHADOW = 1;
+
+    private static final byte STRIP_UNKNOWN_FIELDS = 1;
+
+    private static final byte WILDCARD = 1;
+    private static final byte LEADING_SLASH = 2;
+    private static final byte TRAILING_SLASH = 4;
+    private static final byte VARIABLES = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x57535254;
+    private static final int SNAPSHOT_VERSION = 5;
+
+    private static final DataType[] DATA_TYPES = DataType.values();
+    private static final RequestBodyType[] BODY_TYPES = RequestBodyType.values();
+
+    private final String[] strings;
+
+    /**
+     * String id of the pattern, or NONE if the pattern is rebuilt from its segments.
+     */
+    private final int[] patternString;
+    private final byte[] patternFlags;
+    private final int[] patternSegmentStart;
+    /**
+     * Literal segments are stored as their string id and variable segments as ~(name id).
+     */
+    private final int[] patternSegments;
+
+    private final int[] routePattern;
+    private final int[] routeMethod;
+    private final int[] routeParams;
+    private final int[] routePathVariables;
+    private final int[] routeBody;
+    private final int[] routeMinLength;
+    private final int[] routeMaxLength;
+    private final byte[] routeFlags;
+    private final int[] routeResponse;
+    private final int[] routeHeaders;
+    private final int[] routeCookies;
+
+    private final int[] schemaStart;
+    private final int[] schemaFields;
+
+    private final int[] fieldName;
+    private final byte[] fieldType;
+    private final byte[] fieldFlags;
+    private final int[] fieldRegex;
+    private final int[] fieldMinLength;
+    private final int[] fieldMaxLength;
+    private final int[] fieldChildren;
+    private final int[] fieldAllowedValues;
+
+    private final int[] valueListStart;
+    private final int[] valueListStrings;
+
+    private final byte[] bodyType;
+    private final int[] bodyFields;
+    private final long[] bodyMaxExpandedSize;
+    private final int[] bodyMaxCompressionRatio;
+
+    private final int[] responseFields;
+    private final byte[] responseFlags;
+
+    private final Map<String, int[]> routesByFirstSegment;
+    private final int[] otherRoutes;
+
+    private final AtomicReferenceArray<List<URLParamConfig>> paramCache;
+    private final AtomicReferenceArray<List<PathVariable>> pathVariableCache;
+    private final AtomicReferenceArray<RequestBodyConfig> bodyCache;
+    private final AtomicReferenceArray<ResponseBodyConfig> responseCache;
+    private final AtomicReferenceArray<List<HeaderConfig>> headerCache;
+    private final AtomicReferenceArray<List<CookieConfig>> cookieCache;
+
+    /**
+     * Result of the last check of the AntPathMatcher given to find().
+     */
+    private volatile MatcherCheck matcherCheck;
+
+    private CompactRouteTable(Builder builder) {
+        strings = builder.strings.toArray(new String[0]);
+
+        patternString = builder.patternString.toArray();
+        patternFlags = builder.patternFlags.toByteArray();
+        patternSegmentStart = builder.patternSegmentStart.toArray();
+        patternSegments = builder.patternSegments.toArray();
+
+        routePattern = builder.routePattern.toArray();
+        routeMethod = builder.routeMethod.toArray();
+        routeParams = builder.routeParams.toArray();
+        routePathVariables = builder.routePathVariables.toArray();
+        routeBody = builder.routeBody.toArray();
+        routeMinLength = builder.routeMinLength.toArray();
+        routeMaxLength = builder.routeMaxLength.toArray();
+        routeFlags = builder.routeFlags.toByteArray();
+        routeResponse = builder.routeResponse.toArray();
+        routeHeaders = builder.routeHeaders.toArray();
+        routeCookies = builder.routeCookies.toArray();
+
+        schemaStart = builder.schemaStart.toArray();
+        schemaFields = builder.schemaFields.toArray();
+
+        fieldName = builder.fieldName.toArray();
+        fieldType = builder.fieldType.toByteArray();
+        fieldFlags = builder.fieldFlags.toByteArray();
+        fieldRegex = builder.fieldRegex.toArray();
+        fieldMinLength = builder.fieldMinLength.toArray();
+        fieldMaxLength = builder.fieldMaxLength.toArray();
+        fieldChildren = builder.fieldChildren.toArray();
+        fieldAllowedValues = builder.fieldAllowedValues.toArray();
+
+        valueListStart = builder.valueListStart.toArray();
+        valueListStrings = builder.valueListStrings.toArray();
+
+        bodyType = builder.bodyType.toByteArray();
+        bodyFields = builder.bodyFields.toArray();
+        bodyMaxExpandedSize = builder.bodyMaxExpandedSize.stream().mapToLong(Long::longValue).toArray();
+        bodyMaxCompressionRatio = builder.bodyMaxCompressionRatio.toArray();
+
+        responseFields = builder.responseFields.toArray();
+        responseFlags = builder.responseFlags.toByteArray();
+
+        routesByFirstSegment = new HashMap<>();
+        otherRoutes = indexRoutes(routesByFirstSegment);
+
+        paramCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        pathVariableCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        bodyCache = new AtomicReferenceArray<>(bodyType.length);
+        responseCache = new AtomicReferenceArray<>(responseFields.length);
+        headerCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        cookieCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+    }
+
+    private CompactRouteTable(ByteBuffer buffer) {
+        strings = readStrings(buffer);
+
+        patternString = readInts(buffer);
+        patternFlags = readBytes(buffer);
+        patternSegmentStart = readInts(buffer);
+        patternSegments = readInts(buffer);
+
+        routePattern = readInts(buffer);
+        routeMethod = readInts(buffer);
+        routeParams = readInts(buffer);
+        routePathVariables = readInts(buffer);
+        routeBody = readInts(buffer);
+        routeMinLength = readInts(buffer);
+        routeMaxLength = readInts(buffer);
+        routeFlags = readBytes(buffer);
+        routeResponse = readInts(buffer);
+        routeHeaders = readInts(buffer);
+        routeCookies = readInts(buffer);
+
+        schemaStart = readInts(buffer);
+        schemaFields = readInts(buffer);
+
+        fieldName = readInts(buffer);
+        fieldType = readBytes(buffer);
+        fieldFlags = readBytes(buffer);
+        fieldRegex = readInts(buffer);
+        fieldMinLength = readInts(buffer);
+        fieldMaxLength = readInts(buffer);
+        fieldChildren = readInts(buffer);
+        fieldAllowedValues = readInts(buffer);
+
+        valueListStart = readInts(buffer);
+        valueListStrings = readInts(buffer);
+
+        bodyType = readBytes(buffer);
+        bodyFields = readInts(buffer);
+        bodyMaxExpandedSize = readLongs(buffer);
+        bodyMaxCompressionRatio = readInts(buffer);
+
+        responseFields = readInts(buffer);
+        responseFlags = readBytes(buffer);
+
+        routesByFirstSegment = new HashMap<>();
+        otherRoutes = indexRoutes(routesByFirstSegment);
+
+        paramCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        pathVariableCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        bodyCache = new AtomicReferenceArray<>(bodyType.length);
+        responseCache = new AtomicReferenceArray<>(responseFields.length);
+        headerCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+        cookieCache = new AtomicReferenceArray<>(schemaStart.length - 1);
+    }
+
+    /**
+     * Groups the routes by their first literal segment and returns the routes which can't be grouped.
+     */
+    private int[] indexRoutes(Map<String, int[]> index) {
+        Map<String, IntList> buckets = new HashMap<>();
+        IntList others = new IntList();
+        for (int route = 0; route < routePattern.length; route++) {
+            int pattern = routePattern[route];
+            int firstSegment = patternSegmentStart[pattern] < patternSegmentStart[pattern + 1]
+                    ? patternSegments[patternSegmentStart[pattern]] : NONE;
+            if ((patternFlags[pattern] & WILDCARD) != 0 || firstSegment < 0) {
+                others.add(route);
+            } else {
+                buckets.computeIfAbsent(strings[firstSegment], key -> new IntList()).add(route);
+            }
+        }
+        buckets.forEach((segment, routes) -> index.put(segment, routes.toArray()));
+        return others.toArray();
+    }
+
+    public static CompactRouteTable compile(List<URLConfig> urlConfigs) {
+        Builder builder = new Builder();
+        urlConfigs.forEach(builder::add);
+        return builder.build();
+    }
+
+    /**
+     * Loads a snapshot written by {@link #writeSnapshot(Path)}. The file is memory mapped and the arrays are bulk
+     * copied from it, the routes were already validated when the snapshot was compiled.
+     *
+     * @throws IOException if the file is not a route snapshot of this version or its checksum doesn't match.
+     */
+    public static CompactRouteTable loadSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(path + " is not a route snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported route snapshot version " + version + " in " + path);
+            }
+            long checksum = buffer.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if (crc.getValue() != checksum) {
+                throw new IOException("Route snapshot " + path + " is corrupted");
+            }
+            try {
+                return new CompactRouteTable(buffer);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("Route snapshot " + path + " is corrupted", e);
+            }
+        }
+    }
+
+    public void writeSnapshot(Path path) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        writeStrings(out, strings);
+
+        writeInts(out, patternString);
+        writeBytes(out, patternFlags);
+        writeInts(out, patternSegmentStart);
+        writeInts(out, patternSegments);
+
+        writeInts(out, routePattern);
+        writeInts(out, routeMethod);
+        writeInts(out, routeParams);
+        writeInts(out, routePathVariables);
+        writeInts(out, routeBody);
+        writeInts(out, routeMinLength);
+        writeInts(out, routeMaxLength);
+        writeBytes(out, routeFlags);
+        writeInts(out, routeResponse);
+        writeInts(out, routeHeaders);
+        writeInts(out, routeCookies);
+
+        writeInts(out, schemaStart);
+        writeInts(out, schemaFields);
+
+        writeInts(out, fieldName);
+        writeBytes(out, fieldType);
+        writeBytes(out, fieldFlags);
+        writeInts(out, fieldRegex);
+        writeInts(out, fieldMinLength);
+        writeInts(out, fieldMaxLength);
+        writeInts(out, fieldChildren);
+        writeInts(out, fieldAllowedValues);
+
+        writeInts(out, valueListStart);
+        writeInts(out, valueListStrings);
+
+        writeBytes(out, bodyType);
+        writeInts(out, bodyFields);
+        writeLongs(out, bodyMaxExpandedSize);
+        writeInts(out, bodyMaxCompressionRatio);
+
+        writeInts(out, responseFields);
+        writeBytes(out, responseFlags);
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            file.writeInt(SNAPSHOT_MAGIC);
+            file.writeInt(SNAPSHOT_VERSION);
+            file.writeLong(crc.getValue());
+            payload.writeTo(file);
+        }
+    }
+
+    public int size() {
+        return routePattern.length;
+    }
+
+    /**
+     * Returns the index of the route matching the path and method, or NOT_FOUND. Same as the URLValidationService a
+     * route whose pattern is exactly the path is preferred, otherwise the first matching route is returned.
+     */
+    public int find(String path, String method, AntPathMatcher antPathMatcher) {
+        String upperMethod = method.toUpperCase();
+        MatcherCheck check = matcherCheck;
+        if (check == null || check.matcher != antPathMatcher) {
+            check = new MatcherCheck(antPathMatcher, isDefaultMatcher(antPathMatcher));
+            matcherCheck = check;
+        }
+        if (!check.isDefault) {
+            return findWithMatcher(path, upperMethod, antPathMatcher);
+        }
+        int[] candidates = routesByFirstSegment.get(getFirstSegment(path));
+        int first = NOT_FOUND;
+        if (candidates != null) {
+            for (int route : candidates) {
+                if (matches(route, path, upperMethod, antPathMatcher)) {
+                    if (isExactPath(route, path)) {
+                        return route;
+                    }
+                    if (first == NOT_FOUND) {
+                        first = route;
+                    }
+                }
+            }
+        }
+        for (int route : otherRoutes) {
+            if (matches(route, path, upperMethod, antPathMatcher)) {
+                if (isExactPath(route, path)) {
+                    return route;
+                }
+                if (first == NOT_FOUND || route < first) {
+                    first = route;
+                }
+            }
+        }
+        return first;
+    }
+
+    public String getPath(int route) {
+        int pattern = routePattern[route];
+        if (patternString[pattern] != NONE) {
+            return strings[patternString[pattern]];
+        }
+        StringBuilder path = new StringBuilder();
+        if ((patternFlags[pattern] & LEADING_SLASH) != 0) {
+            path.append('/');
+        }
+        for (int segment = patternSegmentStart[pattern]; segment < patternSegmentStart[pattern + 1]; segment++) {
+            if (segment > patternSegmentStart[pattern]) {
+                path.append('/');
+            }
+            int code = patternSegments[segment];
+            if (code >= 0) {
+                path.append(strings[code]);
+            } else {
+                path.append('{').append(strings[~code]).append('}');
+            }
+        }
+        if ((patternFlags[pattern] & TRAILING_SLASH) != 0
+                && patternSegmentStart[pattern] < patternSegmentStart[pattern + 1]) {
+            path.append('/');
+        }
+        return path.toString();
+    }
+
+    public HttpMethod getMethod(int route) {
+        return HttpMethod.valueOf(strings[routeMethod[route]]);
+    }
+
+    public URLConfig getRoute(int route) {
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath(getPath(route));
+        urlConfig.setMethod(getMethod(route));
+        urlConfig.setParams(getParams(routeParams[route]));
+        urlConfig.setPathVariables(getPathVariables(routePathVariables[route]));
+        urlConfig.setRequestBodyConfig(getRequestBodyConfig(routeBody[route]));
+        urlConfig.setMinLength(routeMinLength[route]);
+        urlConfig.setMaxLength(routeMaxLength[route]);
+        urlConfig.setShadow((routeFlags[route] & SHADOW) != 0);
+        urlConfig.setResponseBodyConfig(getResponseBodyConfig(routeResponse[route]));
+        urlConfig.setHeaders(getHeaders(routeHeaders[route]));
+        urlConfig.setCookies(getCookies(routeCookies[route]));
+        return urlConfig;
+    }
+
+    /**
+     * Estimated retained heap of this table in bytes, including the string pool and the route index. The URLConfig,
+     * params and other config objects created on demand by {@link #getRoute(int)} and held in the caches are not
+     * counted. Uses the object layout of a 64 bit JVM with compressed oops (12 byte object header, 16 byte array
+     * header, 4 byte references, 8 byte alignment), CompactRouteTableMemoryTest checks it against JOL.
+     */
+    public long getRetainedBytes() {
+        long bytes = align(12 + 43 * 4);
+        for (String value : strings) {
+            bytes += align(24) + arrayBytes(value.length(), 1);
+        }
+        bytes += arrayBytes(strings.length, 4);
+        bytes += arrayBytes(patternString.length, 4) + arrayBytes(patternFlags.length, 1)
+                + arrayBytes(patternSegmentStart.length, 4) + arrayBytes(patternSegments.length, 4);
+        bytes += 10 * arrayBytes(routePattern.length, 4) + arrayBytes(routeFlags.length, 1);
+        bytes += arrayBytes(schemaStart.length, 4) + arrayBytes(schemaFields.length, 4);
+        bytes += 6 * arrayBytes(fieldName.length, 4) + 2 * arrayBytes(fieldType.length, 1);
+        bytes += arrayBytes(valueListStart.length, 4) + arrayBytes(valueListStrings.length, 4);
+        bytes += arrayBytes(bodyType.length, 1) + arrayBytes(bodyFields.length, 4)
+                + arrayBytes(bodyMaxExpandedSize.length, 8) + arrayBytes(bodyMaxCompressionRatio.length, 4);
+        bytes += arrayBytes(responseFields.length, 4) + arrayBytes(responseFlags.length, 1);
+        // HashMap, its table and one node (32 bytes) per first segment, the keys are shared with the string pool.
+        bytes += align(48);
+        if (!routesByFirstSegment.isEmpty()) {
+            int capacity = 16;
+            while (routesByFirstSegment.size() > capacity * 3 / 4) {
+                capacity <<= 1;
+            }
+            bytes += arrayBytes(capacity, 4);
+        }
+        long[] indexBytes = {0};
+        // forEach instead of values() so that the estimate doesn't create the values view of the map.
+        routesByFirstSegment.forEach((segment, routes) -> indexBytes[0] += 32 + arrayBytes(routes.length, 4));
+        bytes += indexBytes[0];
+        bytes += arrayBytes(otherRoutes.length, 4);
+        bytes += 6 * align(16) + 4 * arrayBytes(paramCache.length(), 4) + arrayBytes(bodyCache.length(), 4)
+                + arrayBytes(responseCache.length(), 4);
+        return bytes;
+    }
+
+    public long getRetainedBytesPerRoute() {
+        return size() == 0 ? 0 : getRetainedBytes() / size();
+    }
+
+    /**
+     * Returns true if the matcher splits and compares the paths like a new AntPathMatcher, so the segment walk of
+     * {@link #matches} gives the same result.
+     */
+    private static boolean isDefaultMatcher(AntPathMatcher antPathMatcher) {
+        return antPathMatcher.getClass() == AntPathMatcher.class
+                && !antPathMatcher.match("/a", "/A")
+                && !antPathMatcher.match("/ a", "/a")
+                && !antPathMatcher.match("/a/*", "/a/b/c");
+    }
+
+    /**
+     * Matches every route with the given matcher in the order of the routes, same as the URLValidationService
+     * does with the URL configs.
+     */
+    private int findWithMatcher(String path, String upperMethod, AntPathMatcher antPathMatcher) {
+        int first = NOT_FOUND;
+        for (int route = 0; route < routePattern.length; route++) {
+            if (!strings[routeMethod[route]].equals(upperMethod)) {
+                continue;
+            }
+            String pattern = getPath(route);
+            if (antPathMatcher.match(pattern, path)) {
+                if (pattern.equals(path)) {
+                    return route;
+                }
+                if (first == NOT_FOUND) {
+                    first = route;
+                }
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Returns true if the pattern of a route which matched the path is exactly the path, without creating the
+     * pattern string.
+     */
+    private boolean isExactPath(int route, String path) {
+        int pattern = routePattern[route];
+        if (patternString[pattern] != NONE) {
+            return strings[patternString[pattern]].equals(path);
+        }
+        if ((patternFlags[pattern] & VARIABLES) != 0) {
+            // Only a path containing the variable itself, like /users/{id}, can be equal to the pattern.
+            return path.indexOf('{') != -1 && getPath(route).equals(path);
+        }
+        // The literal segments and the slashes matched, so only empty segments can make the path differ.
+        return !path.contains("//");
+    }
+
+    private boolean matches(int route, String path, String upperMethod, AntPathMatcher antPathMatcher) {
+        if (!strings[routeMethod[route]].equals(upperMethod)) {
+            return false;
+        }
+        int pattern = routePattern[route];
+        if ((patternFlags[pattern] & WILDCARD) != 0) {
+            return antPathMatcher.match(strings[patternString[pattern]], path);
+        }
+        boolean leadingSlash = !path.isEmpty() && path.charAt(0) == '/';
+        boolean trailingSlash = !path.isEmpty() && path.charAt(path.length() - 1) == '/';
+        if (leadingSlash != ((patternFlags[pattern] & LEADING_SLASH) != 0)
+                || trailingSlash != ((patternFlags[pattern] & TRAILING_SLASH) != 0)) {
+            return false;
+        }
+        // Walking the segments of the path without splitting it, empty segments are ignored like the
+        // AntPathMatcher does.
+        int segment = patternSegmentStart[pattern];
+        int end = patternSegmentStart[pattern + 1];
+        int index = 0;
+        int length = path.length();
+        while (true) {
+            while (index < length && path.charAt(index) == '/') {
+                index++;
+            }
+            if (index == length) {
+                break;
+            }
+            int segmentEnd = path.indexOf('/', index);
+            if (segmentEnd == -1) {
+                segmentEnd = length;
+            }
+            if (segment == end) {
+                return false;
+            }
+            int code = patternSegments[segment++];
+            if (code >= 0) {
+                String literal = strings[code];
+                if (literal.length() != segmentEnd - index || !path.regionMatches(index, literal, 0,
+                        literal.length())) {
+                    return false;
+                }
+            }
+            index = segmentEnd;
+        }
+        return segment == end;
+    }
+
+    private String getFirstSegment(String path) {
+        int start = 0;
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        int end = path.indexOf('/', start);
+        return path.substring(start, end == -1 ? path.length() : end);
+    }
+
+    private List<URLParamConfig> getParams(int schema) {
+        List<URLParamConfig> params = paramCache.get(schema);
+        if (params == null) {
+            List<URLParamConfig> created = new ArrayList<>();
+            for (int i = schemaStart[schema]; i < schemaStart[schema + 1]; i++) {
+                int field = schemaFields[i];
+                created.add(new URLParamConfig(getString(fieldName[field]), getDataType(field),
+                        (fieldFlags[field] & MANDATORY) != 0, (fieldFlags[field] & MULTIPLE) != 0,
+                        getString(fieldRegex[field]), fieldMinLength[field], fieldMaxLength[field]));
+            }
+            params = Collections.unmodifiableList(created);
+            paramCache.compareAndSet(schema, null, params);
+        }
+        return params;
+    }
+
+    private List<PathVariable> getPathVariables(int schema) {
+        List<PathVariable> pathVariables = pathVariableCache.get(schema);
+        if (pathVariables == null) {
+            List<PathVariable> created = new ArrayList<>();
+            for (int i = schemaStart[schema]; i < schemaStart[schema + 1]; i++) {
+                int field = schemaFields[i];
+                created.add(new PathVariable(getString(fieldName[field]), getDataType(field),
+                        getString(fieldRegex[field]), (fieldFlags[field] & OPTIONAL) != 0, fieldMinLength[field],
+                        fieldMaxLength[field]));
+            }
+            pathVariables = Collections.unmodifiableList(created);
+            pathVariableCache.compareAndSet(schema, null, pathVariables);
+        }
+        return pathVariables;
+    }
+
+    private List<HeaderConfig> getHeaders(int schema) {
+        List<HeaderConfig> headers = headerCache.get(schema);
+        if (headers == null) {
+            List<HeaderConfig> created = new ArrayList<>();
+            for (int i = schemaStart[schema]; i < schemaStart[schema + 1]; i++) {
+                int field = schemaFields[i];
+                created.add(new HeaderConfig(getString(fieldName[field]), getDataType(field),
+                        (fieldFlags[field] & MANDATORY) != 0, getString(fieldRegex[field]), fieldMinLength[field],
+                        fieldMaxLength[field], getValueList(fieldAllowedValues[field])));
+            }
+            headers = Collections.unmodifiableList(created);
+            headerCache.compareAndSet(schema, null, headers);
+        }
+        return headers;
+    }
+
+    private List<CookieConfig> getCookies(int schema) {
+        List<CookieConfig> cookies = cookieCache.get(schema);
+        if (cookies == null) {
+            List<CookieConfig> created = new ArrayList<>();
+            for (int i = schemaStart[schema]; i < schemaStart[schema + 1]; i++) {
+                int field = schemaFields[i];
+                created.add(new CookieConfig(getString(fieldName[field]), getDataType(field),
+                        (fieldFlags[field] & MANDATORY) != 0, getString(fieldRegex[field]), fieldMinLength[field],
+                        fieldMaxLength[field]));
+            }
+            cookies = Collections.unmodifiableList(created);
+            cookieCache.compareAndSet(schema, null, cookies);
+        }
+        return cookies;
+    }
+
+    private List<String> getValueList(int valueList) {
+        if (valueList == NONE) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>();
+        for (int i = valueListStart[valueList]; i < valueListStart[valueList + 1]; i++) {
+            values.add(strings[valueListStrings[i]]);
+        }
+        return Collections.unmodifiableList(values);
+    }
+
+    private RequestBodyConfig getRequestBodyConfig(int body) {
+        if (body == NONE) {
+            return null;
+        }
+        RequestBodyConfig bodyConfig = bodyCache.get(body);
+        if (bodyConfig == null) {
+            bodyConfig = new RequestBodyConfig();
+            bodyConfig.setType(BODY_TYPES[bodyType[body]]);
+            bodyConfig.setFields(getRequestBodyFields(bodyFields[body]));
+            bodyConfig.setMaxExpandedSize(bodyMaxExpandedSize[body]);
+            bodyConfig.setMaxCompressionRatio(bodyMaxCompressionRatio[body]);
+            bodyCache.compareAndSet(body, null, bodyConfig);
+        }
+        return bodyConfig;
+    }
+
+    private ResponseBodyConfig getResponseBodyConfig(int response) {
+        if (response == NONE) {
+            return null;
+        }
+        ResponseBodyConfig responseConfig = responseCache.get(response);
+        if (responseConfig == null) {
+            responseConfig = new ResponseBodyConfig();
+            responseConfig.setFields(getRequestBodyFields(responseFields[response]));
+            responseConfig.setStripUnknownFields((responseFlags[response] & STRIP_UNKNOWN_FIELDS) != 0);
+            responseCache.compareAndSet(response, null, responseConfig);
+        }
+        return responseConfig;
+    }
+
+    private List<RequestBodyField> getRequestBodyFields(int schema) {
+        List<RequestBodyField> fields = new ArrayList<>();
+        for (int i = schemaStart[schema]; i < schemaStart[schema + 1]; i++) {
+            int field = schemaFields[i];
+            RequestBodyField bodyField = new RequestBodyField();
+            bodyField.setKey(getString(fieldName[field]));
+            bodyField.setType(getDataType(field));
+            bodyField.setRegex(getString(fieldRegex[field]));
+            bodyField.setMandatory((fieldFlags[field] & MANDATORY) != 0);
+            bodyField.setMinLength(fieldMinLength[field]);
+            bodyField.setMaxLength(fieldMaxLength[field]);
+            bodyField.setChildren(getRequestBodyFields(fieldChildren[field]));
+            fields.add(bodyField);
+        }
+        return Collections.unmodifiableList(fields);
+    }
+
+    private DataType getDataType(int field) {
+        return fieldType[field] < 0 ? null : DATA_TYPES[fieldType[field]];
+    }
+
+    private String getString(int id) {
+        return id == NONE ? null : strings[id];
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        int[] ends = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            blob.write(values[i].getBytes(StandardCharsets.UTF_8));
+            ends[i] = blob.size();
+        }
+        writeInts(out, ends);
+        writeBytes(out, blob.toByteArray());
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        int[] ends = readInts(buffer);
+        byte[] blob = readBytes(buffer);
+        String[] values = new String[ends.length];
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            values[i] = new String(blob, start, ends[i] - start, StandardCharsets.UTF_8);
+            start = ends[i];
+        }
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    private static long[] readLongs(ByteBuffer buffer) {
+        long[] values = new long[buffer.getInt()];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] values = new byte[buffer.getInt()];
+        buffer.get(values);
+        return values;
+    }
+
+    private static long arrayBytes(int length, int elementSize) {
+        return align(16 + (long) length * elementSize);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Adds the routes one by one so a caller generating the configs per tenant doesn't need to hold all the
+     * URLConfig objects at the same time.
+     */
+    public static class Builder {
+
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        private final Map<String, Integer> patternIds = new HashMap<>();
+        private final IntList patternString = new IntList();
+        private final IntList patternFlags = new IntList();
+        private final IntList patternSegmentStart = new IntList();
+        private final IntList patternSegments = new IntList();
+
+        private final IntList routePattern = new IntList();
+        private final IntList routeMethod = new IntList();
+        private final IntList routeParams = new IntList();
+        private final IntList routePathVariables = new IntList();
+        private final IntList routeBody = new IntList();
+        private final IntList routeMinLength = new IntList();
+        private final IntList routeMaxLength = new IntList();
+        private final IntList routeFlags = new IntList();
+        private final IntList routeResponse = new IntList();
+        private final IntList routeHeaders = new IntList();
+        private final IntList routeCookies = new IntList();
+        private final Set<Long> routeKeys = new HashSet<>();
+
+        private final Map<List<Integer>, Integer> schemaIds = new HashMap<>();
+        private final IntList schemaStart = new IntList();
+        private final IntList schemaFields = new IntList();
+
+        private final Map<List<Integer>, Integer> fieldIds = new HashMap<>();
+        private final IntList fieldName = new IntList();
+        private final IntList fieldType = new IntList();
+        private final IntList fieldFlags = new IntList();
+        private final IntList fieldRegex = new IntList();
+        private final IntList fieldMinLength = new IntList();
+        private final IntList fieldMaxLength = new IntList();
+        private final IntList fieldChildren = new IntList();
+        private final IntList fieldAllowedValues = new IntList();
+
+        private final Map<List<Integer>, Integer> valueListIds = new HashMap<>();
+        private final IntList valueListStart = new IntList();
+        private final IntList valueListStrings = new IntList();
+
+        private final Map<List<Long>, Integer> bodyIds = new HashMap<>();
+        private final IntList bodyType = new IntList();
+        private final IntList bodyFields = new IntList();
+        private final List<Long> bodyMaxExpandedSize = new ArrayList<>();
+        private final IntList bodyMaxCompressionRatio = new IntList();
+
+        private final Map<List<Integer>, Integer> responseIds = new HashMap<>();
+        private final IntList responseFields = new IntList();
+        private final IntList responseFlags = new IntList();
+
+        public Builder() {
+            patternSegmentStart.add(0);
+            schemaStart.add(0);
+            valueListStart.add(0);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the same path and method is added twice or a configured path variable
+         *                                  is not present in the path.
+         */
+        public Builder add(URLConfig urlConfig) {
+            Set<String> variableNames = PathPatternUtil.getVariableNames(urlConfig.getPath());
+            for (PathVariable pathVariable : urlConfig.getPathVariables()) {
+                if (!variableNames.contains(pathVariable.getName())) {
+                    throw new IllegalArgumentException("Given path variable " + pathVariable.getName()
+                            + " is not present in the url path " + urlConfig.getPath());
+                }
+            }
+            int pattern = addPattern(urlConfig.getPath());
+            int method = addString(urlConfig.getMethod().name());
+            if (!routeKeys.add(((long) pattern << 32) | method)) {
+                throw new IllegalArgumentException("Duplicate URL configuration for URL " + urlConfig.getPath()
+                        + ", method " + urlConfig.getMethod());
+            }
+            List<Integer> params = new ArrayList<>();
+            for (URLParamConfig param : urlConfig.getParams()) {
+                params.add(addField(param.getName(), param.getType(),
+                        (param.isMandatory() ? MANDATORY : 0) | (param.isMultiple() ? MULTIPLE : 0), param.getRegex(),
+                        param.getMinLength(), param.getMaxLength(), NONE, NONE));
+            }
+            List<Integer> pathVariables = new ArrayList<>();
+            for (PathVariable pathVariable : urlConfig.getPathVariables()) {
+                pathVariables.add(addField(pathVariable.getName(), pathVariable.getType(),
+                        pathVariable.isOptional() ? OPTIONAL : 0, pathVariable.getRegex(), pathVariable.getMinLength(),
+                        pathVariable.getMaxLength(), NONE, NONE));
+            }
+            List<Integer> headers = new ArrayList<>();
+            for (HeaderConfig header : urlConfig.getHeaders()) {
+                headers.add(addField(header.getName(), header.getType(), header.isMandatory() ? MANDATORY : 0,
+                        header.getRegex(), header.getMinLength(), header.getMaxLength(), NONE,
+                        addValueList(header.getAllowedValues())));
+            }
+            List<Integer> cookies = new ArrayList<>();
+            for (CookieConfig cookie : urlConfig.getCookies()) {
+                cookies.add(addField(cookie.getName(), cookie.getType(), cookie.isMandatory() ? MANDATORY : 0,
+                        cookie.getRegex(), cookie.getMinLength(), cookie.getMaxLength(), NONE, NONE));
+            }
+            routePattern.add(pattern);
+            routeMethod.add(method);
+            routeParams.add(addSchema(params));
+            routePathVariables.add(addSchema(pathVariables));
+            routeBody.add(addBody(urlConfig.getRequestBodyConfig()));
+            routeMinLength.add(urlConfig.getMinLength());
+            routeMaxLength.add(urlConfig.getMaxLength());
+            routeFlags.add(urlConfig.isShadow() ? SHADOW : 0);
+            routeResponse.add(addResponse(urlConfig.getResponseBodyConfig()));
+            routeHeaders.add(addSchema(headers));
+            routeCookies.add(addSchema(cookies));
+            return this;
+        }
+
+        public CompactRouteTable build() {
+            return new CompactRouteTable(this);
+        }
+
+        private int addString(String value) {
+            if (value == null) {
+                return NONE;
+            }
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = strings.size();
+                strings.add(value);
+                stringIds.put(value, id);
+            }
+            return id;
+        }
+
+        private int addPattern(String path) {
+            Integer id = patternIds.get(path);
+            if (id != null) {
+                return id;
+            }
+            id = patternString.size();
+            patternIds.put(path, id);
+            int flags = 0;
+            if (path.startsWith("/")) {
+                flags |= LEADING_SLASH;
+            }
+            if (path.endsWith("/")) {
+                flags |= TRAILING_SLASH;
+            }
+            List<String> segments = new ArrayList<>();
+            for (String segment : path.split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if (PathPatternUtil.isWildcardSegment(segment)) {
+                    flags |= WILDCARD;
+                }
+                if (PathPatternUtil.isVariableSegment(segment)) {
+                    flags |= VARIABLES;
+                    patternSegments.add(~addString(segment.substring(1, segment.length() - 1)));
+                } else {
+                    patternSegments.add(addString(segment));
+                }
+                segments.add(segment);
+            }
+            String rebuilt = (path.startsWith("/") ? "/" : "") + String.join("/", segments)
+                    + (path.endsWith("/") && !segments.isEmpty() ? "/" : "");
+            // Most patterns are rebuilt from their interned segments, so the full path is not stored per route.
+            patternString.add((flags & WILDCARD) != 0 || !rebuilt.equals(path) ? addString(path) : NONE);
+            patternFlags.add(flags);
+            patternSegmentStart.add(patternSegments.size());
+            return id;
+        }
+
+        private int addField(String name, DataType type, int flags, String regex, int minLength, int maxLength,
+                             int children, int allowedValues) {
+            List<Integer> key = Arrays.asList(addString(name), type == null ? NONE : type.ordinal(), flags,
+                    addString(regex), minLength, maxLength, children, allowedValues);
+            Integer id = fieldIds.get(key);
+            if (id == null) {
+                id = fieldName.size();
+                fieldName.add(key.get(0));
+                fieldType.add(key.get(1));
+                fieldFlags.add(flags);
+                fieldRegex.add(key.get(3));
+                fieldMinLength.add(minLength);
+                fieldMaxLength.add(maxLength);
+                fieldChildren.add(children);
+                fieldAllowedValues.add(allowedValues);
+                fieldIds.put(key, id);
+            }
+            return id;
+        }
+
+        private int addSchema(List<Integer> fields) {
+            Integer id = schemaIds.get(fields);
+            if (id == null) {
+                id = schemaStart.size() - 1;
+                fields.forEach(schemaFields::add);
+                schemaStart.add(schemaFields.size());
+                schemaIds.put(fields, id);
+            }
+            return id;
+        }
+
+        private int addValueList(List<String> values) {
+            if (values.isEmpty()) {
+                return NONE;
+            }
+            List<Integer> key = new ArrayList<>();
+            values.forEach(value -> key.add(addString(value)));
+            Integer id = valueListIds.get(key);
+            if (id == null) {
+                id = valueListStart.size() - 1;
+                key.forEach(valueListStrings::add);
+                valueListStart.add(valueListStrings.size());
+                valueListIds.put(key, id);
+            }
+            return id;
+        }
+
+        private int addBodyFields(List<RequestBodyField> bodyFields) {
+            List<Integer> fields = new ArrayList<>();
+            for (RequestBodyField field : bodyFields) {
+                fields.add(addField(field.getKey(), field.getType(), field.isMandatory() ? MANDATORY : 0,
+                        field.getRegex(), field.getMinLength(), field.getMaxLength(),
+                        addBodyFields(field.getChildren()), NONE));
+            }
+            return addSchema(fields);
+        }
+
+        private int addBody(RequestBodyConfig bodyConfig) {
+            if (bodyConfig == null) {
+                return NONE;
+            }
+            List<Long> key = Arrays.asList((long) bodyConfig.getType().ordinal(),
+                    (long) addBodyFields(bodyConfig.getFields()), bodyConfig.getMaxExpandedSize(),
+                    (long) bodyConfig.getMaxCompressionRatio());
+            Integer id = bodyIds.get(key);
+            if (id == null) {
+                id = bodyType.size();
+                bodyType.add(key.get(0).intValue());
+                bodyFields.add(key.get(1).intValue());
+                bodyMaxExpandedSize.add(bodyConfig.getMaxExpandedSize());
+                bodyMaxCompressionRatio.add(bodyConfig.getMaxCompressionRatio());
+                bodyIds.put(key, id);
+            }
+            return id;
+        }
+
+        private int addResponse(ResponseBodyConfig responseConfig) {
+            if (responseConfig == null) {
+                return NONE;
+            }
+            List<Integer> key = Arrays.asList(addBodyFields(responseConfig.getFields()),
+                    responseConfig.isStripUnknownFields() ? (int) STRIP_UNKNOWN_FIELDS : 0);
+            Integer id = responseIds.get(key);
+            if (id == null) {
+                id = responseFields.size();
+                responseFields.add(key.get(0));
+                responseFlags.add(key.get(1));
+                responseIds.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    private static class MatcherCheck {
+
+        private final AntPathMatcher matcher;
+        private final boolean isDefault;
+
+        MatcherCheck(AntPathMatcher matcher, boolean isDefault) {
+            this.matcher = matcher;
+            this.isDefault = isDefault;
+        }
+    }
+
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[size];
+            for (int i = 0; i < size; i++) {
+                bytes[i] = (byte) values[i];
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.vapps.security.route;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.WebSecurityConfiguration;
+
+import java.nio.file.Path;
+
+/**
+ * Command line tool which compiles the URL configurations into a route snapshot. The routes are validated (duplicate
+ * paths, unknown path variables) while compiling, so the application doesn't need to validate them at startup.
+ *
+ * Usage: java -cp &lt;classpath&gt; com.vapps.security.route.RouteSnapshotCompiler security.json routes.snapshot
+ *
+ * The config file is the JSON form of WebSecurityConfiguration. The tool is not run by the build of this library,
+ * since the configuration belongs to the application using it. Run it from the application build (for example with
+ * the exec-maven-plugin), then load the snapshot at startup with CompactRouteTable.loadSnapshot and set it as the
+ * routeTable of the WebSecurityConfiguration. Until that is done the URL configs are matched as before.
+ */
+public class RouteSnapshotCompiler {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: RouteSnapshotCompiler <security.json> <routes.snapshot>");
+            System.exit(2);
+        }
+        WebSecurityConfiguration securityConfig = new ObjectMapper().readValue(Path.of(args[0]).toFile(),
+                WebSecurityConfiguration.class);
+        CompactRouteTable routeTable;
+        try {
+            routeTable = CompactRouteTable.compile(securityConfig.getUrlConfigs());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        routeTable.writeSnapshot(Path.of(args[1]));
+        System.out.printf("Compiled %d routes into %s, retained heap %d bytes per route%n", routeTable.size(),
+                args[1], routeTable.getRetainedBytesPerRoute());
+    }
+}
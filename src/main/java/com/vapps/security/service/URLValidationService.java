@@ -5,6 +5,14 @@ import com.vapps.security.config.*;
 import com.vapps.security.config.RequestBodyConfig.RequestBodyType;
 import com.vapps.security.exception.AppException;
 import com.vapps.security.exception.NullValueException;
+import com.vapps.security.jfr.ValidationStage;
+import com.vapps.security.jfr.ValidationStageEvent;
+import com.vapps.security.route.CompactRouteTable;
+import com.vapps.security.util.CountingInputStream;
+import com.vapps.security.util.LimitedDecompressingInputStream;
+import com.vapps.security.util.RequestUtil;
+import com.vapps.security.util.LimitedDecompressingInputStream.LimitExceededException;
+import com.vapps.security.util.LimitedDecompressingInputStream.UnsupportedContentEncodingException;
 import jakarta.servlet.http.HttpServletRequest;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -13,17 +21,18 @@ import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.AntPathMatcher;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import static com.vapps.security.util.RequestUtil.getServletPath;
 
@@ -42,31 +51,123 @@ public class URLValidationService {
     private static final Logger LOGGER = LoggerFactory.getLogger(URLValidationService.class);
 
     public void validateURL(HttpServletRequest request) throws AppException {
-        String servletPath = getServletPath(request);
-        URLConfig urlConfig = getConfig(servletPath, request.getMethod()).orElseThrow(
-                () -> new AppException(HttpStatus.NOT_FOUND.value(), "Oops!, URL not found!"));
-        validateMandatoryParams(urlConfig, request.getParameterMap());
-        validateRequestParams(urlConfig, request.getParameterMap());
-        validatePathVariables(urlConfig, servletPath);
-        validateRequestBody(urlConfig, request);
+        validateURL(request, resolveConfig(getServletPath(request), request.getMethod()));
     }
 
-    private void validateRequestBody(URLConfig urlConfig, HttpServletRequest request) throws AppException {
-        if (urlConfig.getRequestBodyConfig() == null) {
+    /**
+     * Validates the request against an already resolved URL configuration.
+     */
+    public void validateURL(HttpServletRequest request, URLConfig urlConfig) throws AppException {
+        validateURL(urlConfig, getServletPath(request), request.getParameterMap(),
+                request.getHeader(HttpHeaders.CONTENT_ENCODING), request::getInputStream);
+    }
+
+    /**
+     * Validates a request which is not coming through the servlet container. For example a recorded request
+     * replayed from an access log. If the body was not recorded pass a null body, the body validation is skipped
+     * then.
+     */
+    public void validateURL(String servletPath, String method, Map<String, String[]> params, String contentEncoding,
+                            RequestBodySource body) throws AppException {
+        validateURL(resolveConfig(servletPath, method), servletPath, params, contentEncoding, body);
+    }
+
+    public void validateURL(URLConfig urlConfig, String servletPath, Map<String, String[]> params,
+                            String contentEncoding, RequestBodySource body) throws AppException {
+        runStage(ValidationStage.REQUEST_PARAMS, urlConfig, () -> {
+            validateMandatoryParams(urlConfig, params);
+            validateRequestParams(urlConfig, params);
+        });
+        runStage(ValidationStage.PATH_VARIABLES, urlConfig, () -> validatePathVariables(urlConfig, servletPath));
+        validateRequestBody(urlConfig, contentEncoding, body);
+    }
+
+    /**
+     * Validates the headers and cookies of the request. Called before the body is read, so a request with invalid
+     * headers is rejected without buffering its body.
+     */
+    public void validateHeaders(HttpServletRequest request, URLConfig urlConfig) throws AppException {
+        if (urlConfig.getHeaders().isEmpty() && urlConfig.getCookies().isEmpty()) {
             return;
         }
-        RequestBodyType type = urlConfig.getRequestBodyConfig().getType();
+        runStage(ValidationStage.HEADERS, urlConfig, () -> {
+            for (HeaderConfig header : urlConfig.getHeaders()) {
+                // The container looks up the headers ignoring the case without creating any objects.
+                validateHeader(header, request.getHeader(header.getName()));
+            }
+            for (CookieConfig cookie : urlConfig.getCookies()) {
+                validateCookie(cookie, getCookieValue(request, cookie.getName()));
+            }
+        });
+    }
+
+    /**
+     * Returns the URL configuration of the given path and method.
+     *
+     * @throws AppException with 404 status if no configuration matches.
+     */
+    public URLConfig resolveConfig(String servletPath, String method) throws AppException {
+        ValidationStageEvent event = ValidationStageEvent.start(ValidationStage.CONFIG_LOOKUP, null);
+        Optional<URLConfig> config = getConfig(servletPath, method);
+        config.ifPresentOrElse(urlConfig -> event.setRoutePattern(urlConfig.getPath()),
+                () -> event.reject(HttpStatus.NOT_FOUND.value()));
+        event.finish();
+        return config.orElseThrow(() -> new AppException(HttpStatus.NOT_FOUND.value(), "Oops!, URL not found!"));
+    }
+
+    /**
+     * Runs a validation stage and records it as a ValidationStageEvent for Flight Recorder.
+     */
+    private void runStage(ValidationStage stage, URLConfig urlConfig, ValidationStep step) throws AppException {
+        ValidationStageEvent event = ValidationStageEvent.start(stage, urlConfig.getPath());
+        try {
+            step.validate();
+        } catch (AppException ex) {
+            event.reject(ex.getStatus());
+            throw ex;
+        } finally {
+            event.finish();
+        }
+    }
+
+    private void validateRequestBody(URLConfig urlConfig, String contentEncoding, RequestBodySource body)
+            throws AppException {
+        RequestBodyConfig bodyConfig = urlConfig.getRequestBodyConfig();
+        if (bodyConfig == null || body == null) {
+            return;
+        }
+        RequestBodyType type = bodyConfig.getType();
         switch (type) {
             case JSON -> {
-                JSONObject json = null;
+                ValidationStageEvent event = ValidationStageEvent.start(ValidationStage.BODY_VALIDATION,
+                        urlConfig.getPath());
+                CountingInputStream inputStream = null;
                 try {
-                    json = parseInputStreamToJSONObject(request.getInputStream());
-                } catch (IOException e) {
-                    LOGGER.error(e.getMessage(), e);
-                    throw new AppException(HttpStatus.BAD_REQUEST.value(), "Error while parsing JSON Object!");
+                    JSONObject json = null;
+                    try {
+                        inputStream = new CountingInputStream(body.open());
+                        json = parseInputStreamToJSONObject(LimitedDecompressingInputStream.wrap(inputStream,
+                                contentEncoding, bodyConfig.getMaxExpandedSize(),
+                                bodyConfig.getMaxCompressionRatio()));
+                    } catch (LimitExceededException e) {
+                        throw new AppException(HttpStatus.PAYLOAD_TOO_LARGE.value(), e.getMessage());
+                    } catch (UnsupportedContentEncodingException e) {
+                        throw new AppException(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(), e.getMessage());
+                    } catch (IOException e) {
+                        LOGGER.error(e.getMessage(), e);
+                        throw new AppException(HttpStatus.BAD_REQUEST.value(), "Error while parsing JSON Object!");
+                    }
+                    validateJSONField(json, bodyConfig.getFields());
+                    validateMandatoryRequestBodyFields(bodyConfig.getFields(), json);
+                } catch (AppException ex) {
+                    event.reject(ex.getStatus());
+                    throw ex;
+                } finally {
+                    if (inputStream != null) {
+                        event.setBodySize(inputStream.getCount());
+                    }
+                    event.finish();
                 }
-                validateJSONField(json, urlConfig.getRequestBodyConfig().getFields());
-                validateMandatoryRequestBodyFields(urlConfig.getRequestBodyConfig().getFields(), json);
             }
             default -> {
             }
@@ -107,6 +208,62 @@ public class URLValidationService {
         }
     }
 
+    private void validateHeader(HeaderConfig header, String value) throws AppException {
+        if (value == null) {
+            if (header.isMandatory()) {
+                throw new AppException(HttpStatus.BAD_REQUEST.value(), "Missing mandatory header: " + header.getName());
+            }
+            return;
+        }
+        if (!header.getAllowedValues().isEmpty() && !isAllowedHeaderValue(header.getAllowedValues(), value)) {
+            int status = HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getName())
+                    ? HttpStatus.UNSUPPORTED_MEDIA_TYPE.value() : HttpStatus.BAD_REQUEST.value();
+            throw new AppException(status, "Value of header " + header.getName() + " is not allowed!");
+        }
+        validateParamDataType(header, header.getType(), header.getName(), header.getRegex(), value);
+    }
+
+    private void validateCookie(CookieConfig cookie, String value) throws AppException {
+        if (value == null) {
+            if (cookie.isMandatory()) {
+                throw new AppException(HttpStatus.BAD_REQUEST.value(), "Missing mandatory cookie: " + cookie.getName());
+            }
+            return;
+        }
+        validateParamDataType(cookie, cookie.getType(), cookie.getName(), cookie.getRegex(), value);
+    }
+
+    private boolean isAllowedHeaderValue(List<String> allowedValues, String value) {
+        int end = value.indexOf(';');
+        if (end == -1) {
+            end = value.length();
+        }
+        int start = 0;
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        for (String allowedValue : allowedValues) {
+            if (allowedValue.length() == end - start && value.regionMatches(true, start, allowedValue, 0, end - start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String getCookieValue(HttpServletRequest request, String name) {
+        Enumeration<String> cookieHeaders = request.getHeaders(HttpHeaders.COOKIE);
+        while (cookieHeaders != null && cookieHeaders.hasMoreElements()) {
+            String value = RequestUtil.getCookieValue(cookieHeaders.nextElement(), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
     private void validateRequestParams(URLConfig urlConfig, Map<String, String[]> params) throws AppException {
         for (Map.Entry<String, String[]> param : params.entrySet()) {
             String paramName = param.getKey();
@@ -180,7 +337,14 @@ public class URLValidationService {
         }
     }
 
-    private Optional<URLConfig> getConfig(String path, String method) {
+    public Optional<URLConfig> getConfig(String path, String method) {
+        CompactRouteTable routeTable = securityConfiguration.getRouteTable();
+        if (routeTable != null) {
+            int route = routeTable.find(path, method, antPathMatcher);
+            if (route != CompactRouteTable.NOT_FOUND) {
+                return Optional.of(routeTable.getRoute(route));
+            }
+        }
         List<URLConfig> configs = securityConfiguration.getUrlConfigs().stream()
                 .filter(config -> antPathMatcher.match(config.getPath(), path) && config.getMethod()
                         .matches(method.toUpperCase())).toList();
@@ -323,19 +487,20 @@ public class URLValidationService {
         }
     }
 
-    private JSONObject parseInputStreamToJSONObject(InputStream inputStream) throws AppException {
+    private JSONObject parseInputStreamToJSONObject(InputStream inputStream) throws AppException, IOException {
         try {
+            // Parsing from the reader directly so the body is not collected as a single String before parsing. The
+            // whole document is still built as a JSONObject, its size is bounded only by the maxExpandedSize.
             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-            String jsonText = reader.lines().collect(Collectors.joining("\n"));
-            return (JSONObject) new JSONParser().parse(jsonText);
+            return (JSONObject) new JSONParser().parse(reader);
         } catch (ParseException ex) {
             throw new AppException(HttpStatus.BAD_REQUEST.value(), "Invalid request body! Required a JSON object.");
         }
     }
 
-    private void validateJSONInput(JSONInputValidator validator, String errorMessage) throws AppException {
+    private void validateJSONInput(ValidationStep step, String errorMessage) throws AppException {
         try {
-            validator.validate();
+            step.validate();
         } catch (Exception ex) {
             LOGGER.error(ex.getMessage());
             throw new AppException(HttpStatus.BAD_REQUEST.value(), errorMessage);
@@ -354,11 +519,22 @@ public class URLValidationService {
         }
     }
 
+    /**
+     * A validation which can reject the request, like the checks of a JSON value or a whole validation stage.
+     */
     @FunctionalInterface
-    private interface JSONInputValidator {
+    private interface ValidationStep {
         void validate() throws AppException;
     }
 
+    /**
+     * Opens the request body only when the matched URL configuration needs to validate it.
+     */
+    @FunctionalInterface
+    public interface RequestBodySource {
+        InputStream open() throws IOException;
+    }
+
     private int checkAndGetInt(Object value) {
         return Integer.parseInt(String.valueOf(value));
     }
@@ -0,0 +1,84 @@
+package com.vapps.security.service;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe counters of the validated requests grouped by route and rejection reason. Used for the requests which
+ * are only observed and not rejected, like the replayed access logs and the shadow validation.
+ *
+ * Many reasons contain names sent by the client, like "Parameter X is not allowed!", so only the first
+ * MAX_REASONS_PER_ROUTE reasons of a route are counted separately and the rest are counted under OTHER_REASONS.
+ * This keeps the report bounded however many different names the clients send.
+ */
+public class ValidationReport {
+
+    public static final int MAX_REASONS_PER_ROUTE = 100;
+    public static final String OTHER_REASONS = "Other reasons";
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final Map<String, Map<String, LongAdder>> rejections = new ConcurrentHashMap<>();
+
+    public void accepted() {
+        total.increment();
+    }
+
+    public void rejected(String route, String reason) {
+        total.increment();
+        rejected.increment();
+        Map<String, LongAdder> reasons = rejections.computeIfAbsent(route, key -> new ConcurrentHashMap<>());
+        LongAdder count = reasons.get(reason);
+        if (count == null) {
+            // Checked without a lock, so concurrent rejections can add a few reasons more than the limit.
+            count = reasons.computeIfAbsent(reasons.size() < MAX_REASONS_PER_ROUTE ? reason : OTHER_REASONS,
+                    key -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Called for the requests which are not validated. For example the lines which can't be parsed as a request.
+     */
+    public void skipped() {
+        skipped.increment();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Returns how many requests of the route were rejected for the reason.
+     */
+    public long getRejected(String route, String reason) {
+        Map<String, LongAdder> reasons = rejections.get(route);
+        LongAdder count = reasons == null ? null : reasons.get(reason);
+        return count == null ? 0 : count.sum();
+    }
+
+    public void print(PrintStream out) {
+        out.printf("Requests: %d, Rejected: %d, Skipped: %d%n", getTotal(), getRejected(), getSkipped());
+        List<String[]> rows = new ArrayList<>();
+        rejections.forEach((route, reasons) -> reasons.forEach(
+                (reason, count) -> rows.add(new String[]{String.valueOf(count.sum()), route, reason})));
+        rows.sort(Comparator.comparingLong((String[] row) -> Long.parseLong(row[0])).reversed());
+        for (String[] row : rows) {
+            out.printf("%12s  %-40s  %s%n", row[0], row[1], row[2]);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.vapps.security.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decompresses a gzip or deflate request body while it is read and stops as soon as the expanded size or the
+ * compression ratio crosses the given limits. So a decompression bomb is rejected after a bounded amount of work
+ * instead of expanding the whole document.
+ */
+public class LimitedDecompressingInputStream extends FilterInputStream {
+
+    /**
+     * The ratio is checked only after this many bytes are expanded, small bodies can have a high ratio legitimately.
+     */
+    private static final long RATIO_CHECK_THRESHOLD = 64 * 1024;
+
+    private final CountingInputStream compressed;
+    private final long maxExpandedSize;
+    private final int maxCompressionRatio;
+    private long expanded;
+
+    private LimitedDecompressingInputStream(InputStream decompressed, CountingInputStream compressed,
+                                            long maxExpandedSize, int maxCompressionRatio) {
+        super(decompressed);
+        this.compressed = compressed;
+        this.maxExpandedSize = maxExpandedSize;
+        this.maxCompressionRatio = maxCompressionRatio;
+    }
+
+    /**
+     * Wraps the given stream based on the Content-Encoding header. Returns the same stream if it is not encoded.
+     *
+     * @throws UnsupportedContentEncodingException if the encoding is not gzip or deflate.
+     */
+    public static InputStream wrap(InputStream inputStream, String contentEncoding, long maxExpandedSize,
+                                   int maxCompressionRatio) throws IOException {
+        if (contentEncoding == null || contentEncoding.isBlank() || "identity".equalsIgnoreCase(
+                contentEncoding.trim())) {
+            return inputStream;
+        }
+        CountingInputStream compressed = new CountingInputStream(inputStream);
+        InputStream decompressed = switch (contentEncoding.trim().toLowerCase()) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(compressed);
+            case "deflate" -> new InflaterInputStream(compressed);
+            default -> throw new UnsupportedContentEncodingException(
+                    "Unsupported Content-Encoding " + contentEncoding);
+        };
+        return new LimitedDecompressingInputStream(decompressed, compressed, maxExpandedSize, maxCompressionRatio);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value != -1) {
+            count(1);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    private void count(long bytes) throws IOException {
+        expanded += bytes;
+        if (expanded > maxExpandedSize) {
+            throw new LimitExceededException("Request body exceeds the maximum expanded size of " + maxExpandedSize
+                    + " bytes");
+        }
+        if (expanded > RATIO_CHECK_THRESHOLD && expanded > (long) maxCompressionRatio * compressed.getCount()) {
+            throw new LimitExceededException("Request body exceeds the maximum compression ratio of "
+                    + maxCompressionRatio);
+        }
+    }
+
+    /**
+     * Thrown when the expanded body crosses the configured limits.
+     */
+    public static class LimitExceededException extends IOException {
+
+        public LimitExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown when the Content-Encoding is not supported.
+     */
+    public static class UnsupportedContentEncodingException extends IOException {
+
+        public UnsupportedContentEncodingException(String message) {
+            super(message);
+        }
+    }
+}
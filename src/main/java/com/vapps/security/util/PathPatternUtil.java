@@ -0,0 +1,45 @@
+package com.vapps.security.util;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class PathPatternUtil {
+
+    /**
+     * Returns the URI template variable names of the given path pattern. For example {familyId} and {id:\d+} gives
+     * familyId and id.
+     *
+     * Scans the pattern once instead of matching it against a dummy path with the AntPathMatcher.
+     */
+    public static Set<String> getVariableNames(String pathPattern) {
+        Set<String> names = new LinkedHashSet<>();
+        int start = pathPattern.indexOf('{');
+        while (start != -1) {
+            int end = pathPattern.indexOf('}', start);
+            if (end == -1) {
+                break;
+            }
+            int regexStart = pathPattern.indexOf(':', start);
+            int nameEnd = regexStart != -1 && regexStart < end ? regexStart : end;
+            names.add(pathPattern.substring(start + 1, nameEnd).trim());
+            start = pathPattern.indexOf('{', end);
+        }
+        return names;
+    }
+
+    /**
+     * Returns true if the segment is a whole URI template variable without a regex like {familyId}.
+     */
+    public static boolean isVariableSegment(String segment) {
+        return segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}'
+                && segment.indexOf('{', 1) == -1 && segment.indexOf(':') == -1;
+    }
+
+    /**
+     * Returns true if the segment has to be matched by the AntPathMatcher itself.
+     */
+    public static boolean isWildcardSegment(String segment) {
+        return !isVariableSegment(segment) && (segment.indexOf('*') != -1 || segment.indexOf('?') != -1
+                || segment.indexOf('{') != -1);
+    }
+}
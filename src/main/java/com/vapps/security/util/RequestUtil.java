@@ -3,9 +3,73 @@ package com.vapps.security.util;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.web.util.UrlPathHelper;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class RequestUtil {
 
     public static String getServletPath(HttpServletRequest request) {
         return new UrlPathHelper().getPathWithinApplication(request);
     }
+
+    /**
+     * Returns the value of the cookie from a raw Cookie header, or null if it is not present. Scans the header
+     * directly so no Cookie objects are created for the cookies which are not needed.
+     */
+    public static String getCookieValue(String cookieHeader, String name) {
+        int index = 0;
+        int length = cookieHeader.length();
+        while (index < length) {
+            while (index < length && (cookieHeader.charAt(index) == ' ' || cookieHeader.charAt(index) == '\t')) {
+                index++;
+            }
+            int end = cookieHeader.indexOf(';', index);
+            if (end == -1) {
+                end = length;
+            }
+            int separator = cookieHeader.indexOf('=', index);
+            if (separator != -1 && separator < end && separator - index == name.length()
+                    && cookieHeader.regionMatches(index, name, 0, name.length())) {
+                int valueStart = separator + 1;
+                int valueEnd = end;
+                while (valueEnd > valueStart && cookieHeader.charAt(valueEnd - 1) == ' ') {
+                    valueEnd--;
+                }
+                if (valueEnd - valueStart >= 2 && cookieHeader.charAt(valueStart) == '"'
+                        && cookieHeader.charAt(valueEnd - 1) == '"') {
+                    valueStart++;
+                    valueEnd--;
+                }
+                return cookieHeader.substring(valueStart, valueEnd);
+            }
+            index = end + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the query string in the same way the servlet container does for getParameterMap.
+     */
+    public static Map<String, String[]> parseQueryString(String query) {
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int index = pair.indexOf('=');
+                String name = index == -1 ? pair : pair.substring(0, index);
+                String value = index == -1 ? "" : pair.substring(index + 1);
+                params.computeIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), key -> new ArrayList<>())
+                        .add(URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        Map<String, String[]> parameterMap = new LinkedHashMap<>();
+        params.forEach((name, values) -> parameterMap.put(name, values.toArray(new String[0])));
+        return parameterMap;
+    }
 }
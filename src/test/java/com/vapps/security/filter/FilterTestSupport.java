@@ -0,0 +1,34 @@
+package com.vapps.security.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.service.URLValidationService;
+import jakarta.servlet.ServletException;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Creates the filter and the service the same way Spring wires them, without starting the application.
+ */
+final class FilterTestSupport {
+
+    private FilterTestSupport() {
+    }
+
+    static URLValidationService newService(WebSecurityConfiguration securityConfig) {
+        URLValidationService service = new URLValidationService();
+        ReflectionTestUtils.setField(service, "securityConfiguration", securityConfig);
+        ReflectionTestUtils.setField(service, "antPathMatcher", new AntPathMatcher());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        return service;
+    }
+
+    static URLValidationFilter newFilter(WebSecurityConfiguration securityConfig) throws ServletException {
+        URLValidationFilter filter = new URLValidationFilter();
+        ReflectionTestUtils.setField(filter, "urlValidationService", newService(securityConfig));
+        ReflectionTestUtils.setField(filter, "securityConfig", securityConfig);
+        filter.init(new MockFilterConfig());
+        return filter;
+    }
+}
@@ -0,0 +1,125 @@
+package com.vapps.security.filter;
+
+import com.vapps.security.config.ClientBlockingConfig;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RejectionSketchTest {
+
+    @Test
+    void countsRejectionsPerKey() {
+        RejectionSketch sketch = new RejectionSketch(1024, 4, 60_000);
+        for (int i = 0; i < 5; i++) {
+            sketch.increment("10.0.0.1");
+        }
+        assertEquals(5, sketch.estimate("10.0.0.1"));
+        assertEquals(0, sketch.estimate("10.0.0.2"));
+    }
+
+    @Test
+    void neverUnderCountsWhenKeysCollide() {
+        // A width of 1 makes every key share the same cells.
+        RejectionSketch sketch = new RejectionSketch(1, 2, 60_000);
+        sketch.increment("a");
+        sketch.increment("b");
+        assertEquals(2, sketch.estimate("a"));
+    }
+
+    @Test
+    void halvesTheCountsOncePerDecayInterval() {
+        AtomicLong now = new AtomicLong();
+        RejectionSketch sketch = new RejectionSketch(1024, 4, 1_000, now::get);
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("10.0.0.1");
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals(8, sketch.estimate("10.0.0.1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(4, sketch.estimate("10.0.0.1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(4, sketch.estimate("10.0.0.1"));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(2, sketch.estimate("10.0.0.1"));
+    }
+
+    @Test
+    void rejectsInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new RejectionSketch(0, 4, 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new RejectionSketch(1024, 0, 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new RejectionSketch(1024, 4, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RejectionSketch(1024, 4, -1));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RejectionSketch(RejectionSketch.MAX_WIDTH + 1, 1, 60_000));
+        assertThrows(IllegalArgumentException.class, () -> new RejectionSketch(RejectionSketch.MAX_WIDTH, 4, 60_000));
+        assertNull(RejectionSketch.validate(16_384, 4, 60_000));
+    }
+
+    @Test
+    void filterBlocksTheClientOnceTheThresholdIsReached() throws Exception {
+        ClientBlockingConfig blockingConfig = new ClientBlockingConfig();
+        blockingConfig.setRejectionThreshold(3);
+        List<URLConfig> urlConfigs = new ArrayList<>();
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/items");
+        urlConfigs.add(urlConfig);
+        WebSecurityConfiguration securityConfig = new WebSecurityConfiguration(urlConfigs);
+        securityConfig.setClientBlockingConfig(blockingConfig);
+        URLValidationFilter filter = FilterTestSupport.newFilter(securityConfig);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.NOT_FOUND.value(), send(filter, "/unknown", "10.0.0.1"));
+        }
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), send(filter, "/api/items", "10.0.0.1"));
+        assertEquals(HttpStatus.OK.value(), send(filter, "/api/items", "10.0.0.2"));
+    }
+
+    @Test
+    void filterUsesTheLastValueOfTheClientKeyHeader() throws Exception {
+        ClientBlockingConfig blockingConfig = new ClientBlockingConfig();
+        blockingConfig.setRejectionThreshold(2);
+        blockingConfig.setClientKeyHeader("X-Client-Address");
+        List<URLConfig> urlConfigs = new ArrayList<>();
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/items");
+        urlConfigs.add(urlConfig);
+        WebSecurityConfiguration securityConfig = new WebSecurityConfiguration(urlConfigs);
+        securityConfig.setClientBlockingConfig(blockingConfig);
+        URLValidationFilter filter = FilterTestSupport.newFilter(securityConfig);
+
+        // The first value is sent by the client, rotating it doesn't change the key.
+        assertEquals(HttpStatus.NOT_FOUND.value(), sendFromProxy(filter, "/unknown", "1.1.1.1, 10.0.0.1"));
+        assertEquals(HttpStatus.NOT_FOUND.value(), sendFromProxy(filter, "/unknown", "2.2.2.2, 10.0.0.1"));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), sendFromProxy(filter, "/api/items", "3.3.3.3, 10.0.0.1"));
+        assertEquals(HttpStatus.OK.value(), sendFromProxy(filter, "/api/items", "1.1.1.1, 10.0.0.2"));
+    }
+
+    private int sendFromProxy(URLValidationFilter filter, String path, String clientAddress) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        request.addHeader("X-Client-Address", clientAddress);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    private int send(URLValidationFilter filter, String path, String remoteAddr) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        request.setRemoteAddr(remoteAddr);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,172 @@
+package com.vapps.security.filter;
+
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.HeaderConfig;
+import com.vapps.security.config.RequestBodyConfig;
+import com.vapps.security.config.RequestBodyField;
+import com.vapps.security.config.ShadowValidationConfig;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.service.ValidationReport;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShadowValidatorTest {
+
+    @Test
+    void headerRejectionIsTheOnlyOutcomeOfTheRequest() throws Exception {
+        HeaderConfig tenant = new HeaderConfig();
+        tenant.setName("X-Tenant");
+        tenant.setMandatory(true);
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/items");
+        urlConfig.setShadow(true);
+        urlConfig.setHeaders(List.of(tenant));
+        WebSecurityConfiguration securityConfig = newConfig(urlConfig);
+        URLValidationFilter filter = FilterTestSupport.newFilter(securityConfig);
+        ThreadPoolExecutor executor = newExecutor(16);
+        ShadowValidator shadowValidator = new ShadowValidator(FilterTestSupport.newService(securityConfig), executor);
+        ReflectionTestUtils.setField(filter, "shadowValidator", shadowValidator);
+
+        assertEquals(HttpStatus.OK.value(), send(filter, null));
+        assertEquals(HttpStatus.OK.value(), send(filter, "acme"));
+        awaitValidations(executor);
+
+        ValidationReport report = filter.getShadowReport();
+        assertEquals(2, report.getTotal());
+        assertEquals(1, report.getRejected());
+        assertEquals(1, report.getRejected("GET /api/items", "Missing mandatory header: X-Tenant"));
+    }
+
+    @Test
+    void bodyRejectionsAreRecordedByTheBackgroundThread() throws Exception {
+        URLConfig urlConfig = ordersConfig();
+        ThreadPoolExecutor executor = newExecutor(16);
+        ShadowValidator shadowValidator = new ShadowValidator(FilterTestSupport.newService(newConfig(urlConfig)),
+                executor);
+
+        shadowValidator.submit(urlConfig, "/api/orders", Map.of(), null, json("{\"customerId\":5}"));
+        shadowValidator.submit(urlConfig, "/api/orders", Map.of(), null, json("{}"));
+        awaitValidations(executor);
+
+        ValidationReport report = shadowValidator.getReport();
+        assertEquals(2, report.getTotal());
+        assertEquals(1, report.getRejected());
+        assertEquals(1, report.getRejected("POST /api/orders", "customerId is mandatory!"));
+    }
+
+    @Test
+    void requestsAreSkippedWhenTheQueueIsFull() throws Exception {
+        URLConfig urlConfig = ordersConfig();
+        ThreadPoolExecutor executor = newExecutor(1);
+        ShadowValidator shadowValidator = new ShadowValidator(FilterTestSupport.newService(newConfig(urlConfig)),
+                executor);
+        CountDownLatch release = new CountDownLatch(1);
+        // Keeps the only thread busy, so the first request waits in the queue and the second one doesn't fit.
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        shadowValidator.submit(urlConfig, "/api/orders", Map.of(), null, json("{\"customerId\":5}"));
+        shadowValidator.submit(urlConfig, "/api/orders", Map.of(), null, json("{\"customerId\":6}"));
+        ValidationReport report = shadowValidator.getReport();
+        assertEquals(1, report.getSkipped());
+
+        release.countDown();
+        awaitValidations(executor);
+        assertEquals(1, report.getTotal());
+        assertEquals(0, report.getRejected());
+    }
+
+    @Test
+    void reasonsPerRouteAreLimited() {
+        ValidationReport report = new ValidationReport();
+        for (int i = 0; i < ValidationReport.MAX_REASONS_PER_ROUTE + 50; i++) {
+            report.rejected("GET /api/items", "Parameter p" + i + " is not allowed!");
+        }
+
+        assertEquals(ValidationReport.MAX_REASONS_PER_ROUTE + 50, report.getRejected());
+        assertEquals(1, report.getRejected("GET /api/items", "Parameter p0 is not allowed!"));
+        assertEquals(0, report.getRejected("GET /api/items", "Parameter p120 is not allowed!"));
+        assertEquals(50, report.getRejected("GET /api/items", ValidationReport.OTHER_REASONS));
+    }
+
+    @Test
+    void invalidSettingsAreReported() {
+        ShadowValidationConfig config = new ShadowValidationConfig();
+        assertNull(ShadowValidator.validate(config));
+        config.setThreads(0);
+        assertNotNull(ShadowValidator.validate(config));
+        config.setThreads(1);
+        config.setQueueCapacity(0);
+        assertNotNull(ShadowValidator.validate(config));
+    }
+
+    private ThreadPoolExecutor newExecutor(int queueCapacity) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    /**
+     * Waits until the submitted validations are done, instead of guessing how long they take.
+     */
+    private void awaitValidations(ThreadPoolExecutor executor) throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Validations didn't complete");
+    }
+
+    private URLConfig ordersConfig() {
+        RequestBodyField customerId = new RequestBodyField();
+        customerId.setKey("customerId");
+        customerId.setType(DataType.LONG);
+        customerId.setMandatory(true);
+        RequestBodyConfig bodyConfig = new RequestBodyConfig();
+        bodyConfig.setFields(new ArrayList<>(List.of(customerId)));
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/orders");
+        urlConfig.setMethod(HttpMethod.POST);
+        urlConfig.setShadow(true);
+        urlConfig.setRequestBodyConfig(bodyConfig);
+        return urlConfig;
+    }
+
+    private WebSecurityConfiguration newConfig(URLConfig urlConfig) {
+        List<URLConfig> urlConfigs = new ArrayList<>();
+        urlConfigs.add(urlConfig);
+        return new WebSecurityConfiguration(urlConfigs);
+    }
+
+    private byte[] json(String body) {
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int send(URLValidationFilter filter, String tenant) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.setServletPath("/api/items");
+        if (tenant != null) {
+            request.addHeader("X-Tenant", tenant);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,180 @@
+package com.vapps.security.filter;
+
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.RequestBodyField;
+import com.vapps.security.config.ResponseBodyConfig;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidatingHttpServletResponseTest {
+
+    @Test
+    void stripsUnknownFieldsWhileStreaming() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+
+        write(validatingResponse, "{\"id\":1,\"sec", "ret\":{\"a\":[1,2]},\"name\":\"x\"}");
+
+        assertEquals("{\"id\":1,\"name\":\"x\"}", response.getContentAsString());
+    }
+
+    @Test
+    void keepsHighPrecisionDecimalsAsTheyAre() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+
+        write(validatingResponse, "{\"price\":1234567890.12345678901,\"x\":1,\"id\":12345678901234567890}");
+
+        assertEquals("{\"price\":1234567890.12345678901,\"id\":12345678901234567890}",
+                response.getContentAsString());
+    }
+
+    @Test
+    void writesTheRestAsItIsWhenTheResponseIsNotValidJson() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+
+        write(validatingResponse, "{\"secret\":\"x\",\"id\":1,\"na", "me\":\"a\" \"b\"}", " trailer");
+
+        // The unknown field before the failure is stripped, everything after the last valid token is kept.
+        assertEquals("{\"id\":1,\"name\":\"a\" \"b\"} trailer", response.getContentAsString());
+    }
+
+    @Test
+    void skippedFieldsAreNotKept() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+        ServletOutputStream out = validatingResponse.getOutputStream();
+        byte[] elements = "1234567,".repeat(1024).getBytes(StandardCharsets.UTF_8);
+
+        out.write("{\"id\":1,\"secret\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 256; i++) {
+            out.write(elements);
+            // Only the part of the last element which is not read yet is kept, not the skipped array.
+            Object validator = ReflectionTestUtils.getField(out, "validator");
+            assertTrue((int) ReflectionTestUtils.getField(validator, "pendingLength") < 16);
+        }
+        out.write("0]}".getBytes(StandardCharsets.UTF_8));
+        validatingResponse.finish();
+
+        assertEquals("{\"id\":1}", response.getContentAsString());
+    }
+
+    @Test
+    void resetBufferDiscardsWhatWasWritten() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+        ServletOutputStream out = validatingResponse.getOutputStream();
+
+        out.write("{\"id\":1,".getBytes(StandardCharsets.UTF_8));
+        validatingResponse.resetBuffer();
+        write(validatingResponse, "{\"id\":2}");
+
+        assertEquals("{\"id\":2}", response.getContentAsString());
+    }
+
+    @Test
+    void resetDiscardsWhatWasWrittenWithTheWriter() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+        PrintWriter writer = validatingResponse.getWriter();
+
+        writer.print("{\"id\":1,\"secret\":");
+        validatingResponse.reset();
+        validatingResponse.setContentType("application/json");
+        writer.print("{\"id\":2,\"secret\":true}");
+        validatingResponse.finish();
+
+        assertEquals("{\"id\":2}", response.getContentAsString());
+    }
+
+    @Test
+    void writesEncodedResponsesAsTheyAre() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ValidatingHttpServletResponse validatingResponse = newResponse(response);
+        validatingResponse.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        byte[] body = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff, 3, 0};
+
+        ServletOutputStream out = validatingResponse.getOutputStream();
+        out.write(body, 0, 5);
+        out.write(body, 5, body.length - 5);
+        validatingResponse.finish();
+
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    void filterFinishesAsyncResponsesWhenTheyComplete() throws Exception {
+        ResponseBodyConfig responseBodyConfig = responseBodyConfig();
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/items");
+        urlConfig.setResponseBodyConfig(responseBodyConfig);
+        List<URLConfig> urlConfigs = new ArrayList<>();
+        urlConfigs.add(urlConfig);
+        URLValidationFilter filter = FilterTestSupport.newFilter(new WebSecurityConfiguration(urlConfigs));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.setServletPath("/api/items");
+        request.setAsyncSupported(true);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<AsyncContext> asyncContext = new AtomicReference<>();
+        AtomicReference<ServletOutputStream> out = new AtomicReference<>();
+        filter.doFilter(request, response, (chainRequest, chainResponse) -> {
+            asyncContext.set(chainRequest.startAsync());
+            chainResponse.setContentType("application/json");
+            out.set(chainResponse.getOutputStream());
+        });
+
+        // Written after the filter returned, like a StreamingResponseBody does.
+        out.get().write("{\"id\":1,\"secret\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+        asyncContext.get().complete();
+
+        assertEquals("{\"id\":1}", response.getContentAsString());
+    }
+
+    private ValidatingHttpServletResponse newResponse(MockHttpServletResponse response) {
+        ValidatingHttpServletResponse validatingResponse = new ValidatingHttpServletResponse(response,
+                responseBodyConfig(), "/api/items");
+        validatingResponse.setContentType("application/json");
+        return validatingResponse;
+    }
+
+    private ResponseBodyConfig responseBodyConfig() {
+        RequestBodyField id = new RequestBodyField();
+        id.setKey("id");
+        id.setType(DataType.INTEGER);
+        RequestBodyField name = new RequestBodyField();
+        name.setKey("name");
+        RequestBodyField price = new RequestBodyField();
+        price.setKey("price");
+        price.setType(DataType.REGEX);
+        price.setRegex("[0-9.]+");
+        ResponseBodyConfig responseBodyConfig = new ResponseBodyConfig();
+        responseBodyConfig.setFields(new ArrayList<>(List.of(id, name, price)));
+        responseBodyConfig.setStripUnknownFields(true);
+        return responseBodyConfig;
+    }
+
+    private void write(ValidatingHttpServletResponse response, String... chunks) throws Exception {
+        ServletOutputStream out = response.getOutputStream();
+        for (String chunk : chunks) {
+            out.write(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+        response.finish();
+    }
+}
@@ -0,0 +1,74 @@
+package com.vapps.security.jfr;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.URLParamConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.exception.AppException;
+import com.vapps.security.service.URLValidationService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationStageEventTest {
+
+    private static final String EVENT_NAME = "com.vapps.security.ValidationStage";
+
+    @Test
+    void rejectedRequestRecordsItsStage(@TempDir Path dir) throws Exception {
+        URLValidationService service = newService();
+        Path file = dir.resolve("validation.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ValidationStageEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            assertThrows(AppException.class, () -> service.validateURL("/api/items", "GET",
+                    Map.of("page", new String[]{"abc"}), null, null));
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(EVENT_NAME)).toList();
+        RecordedEvent lookup = findStage(events, ValidationStage.CONFIG_LOOKUP);
+        assertEquals("/api/items", lookup.getString("routePattern"));
+        assertEquals("ACCEPTED", lookup.getString("outcome"));
+
+        RecordedEvent params = findStage(events, ValidationStage.REQUEST_PARAMS);
+        assertEquals("/api/items", params.getString("routePattern"));
+        assertEquals("REJECTED", params.getString("outcome"));
+        assertEquals(HttpStatus.BAD_REQUEST.value(), params.getInt("status"));
+        // The request was rejected by the params, so the later stages never ran.
+        assertTrue(events.stream().noneMatch(
+                event -> ValidationStage.PATH_VARIABLES.name().equals(event.getString("stage"))));
+    }
+
+    private RecordedEvent findStage(List<RecordedEvent> events, ValidationStage stage) {
+        return events.stream().filter(event -> stage.name().equals(event.getString("stage"))).findFirst()
+                .orElseThrow(() -> new AssertionError("No event recorded for " + stage));
+    }
+
+    private URLValidationService newService() {
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/api/items");
+        urlConfig.setParams(List.of(new URLParamConfig("page", DataType.INTEGER, false, false, null, 0, 100)));
+        URLValidationService service = new URLValidationService();
+        ReflectionTestUtils.setField(service, "securityConfiguration",
+                new WebSecurityConfiguration(List.of(urlConfig)));
+        ReflectionTestUtils.setField(service, "antPathMatcher", new AntPathMatcher());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        return service;
+    }
+}
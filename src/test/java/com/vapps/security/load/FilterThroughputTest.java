@@ -0,0 +1,310 @@
+package com.vapps.security.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput regression suite of the URLValidationFilter. Generates valid and invalid requests for every route of
+ * the WebSecurityConfiguration and fires them at the embedded Tomcat, recording the latency of the accepted and
+ * rejected requests separately.
+ *
+ * Disabled by default, run it with:
+ * <pre>
+ * ./mvnw test -Dtest=FilterThroughputTest -Dloadtest=true [-Dloadtest.config=security.json]
+ *     [-Dloadtest.baseline=filter-throughput.properties]
+ * </pre>
+ *
+ * The results are written to target/load-test/filter-throughput.properties along with the full latency
+ * distributions. If a baseline file is given the test fails when the throughput drops or the p99 latency grows by
+ * more than loadtest.tolerance (0.15 by default) compared to it. To update the baseline, copy the results over it.
+ *
+ * Other settings: loadtest.threads (64), loadtest.warmupSeconds (10), loadtest.durationSeconds (30) and
+ * loadtest.invalidRatio (0.2), the share of the requests which break the config.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class FilterThroughputTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterThroughputTest.class);
+
+    private static final Path RESULT_DIR = Path.of("target", "load-test");
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final String[] PERCENTILE_KEYS = {"p50", "p90", "p99", "p999"};
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private WebSecurityConfiguration securityConfig;
+
+    private final int threads = Integer.getInteger("loadtest.threads", 64);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmupSeconds", 10);
+    private final int durationSeconds = Integer.getInteger("loadtest.durationSeconds", 30);
+    private final double invalidRatio = Double.parseDouble(System.getProperty("loadtest.invalidRatio", "0.2"));
+    private final double tolerance = Double.parseDouble(System.getProperty("loadtest.tolerance", "0.15"));
+
+    @Test
+    void throughput() throws Exception {
+        List<HttpRequest> validRequests = new ArrayList<>();
+        List<HttpRequest> invalidRequests = new ArrayList<>();
+        List<GeneratedRequest> invalidExpectations = new ArrayList<>();
+        List<GeneratedRequest> validExpectations = new ArrayList<>();
+        RequestGenerator generator = new RequestGenerator();
+        String baseUrl = "http://localhost:" + port;
+        for (URLConfig urlConfig : securityConfig.getUrlConfigs()) {
+            try {
+                for (GeneratedRequest request : generator.generate(urlConfig)) {
+                    boolean valid = RequestGenerator.VALID.equals(request.getDescription());
+                    (valid ? validRequests : invalidRequests).add(request.toHttpRequest(baseUrl));
+                    (valid ? validExpectations : invalidExpectations).add(request);
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.info("Skipping {} {}: {}", urlConfig.getMethod(), urlConfig.getPath(), e.getMessage());
+            }
+        }
+        assertFalse(validRequests.isEmpty(), "No requests could be generated from the configuration");
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(threads);
+        Stats stats = new Stats();
+        try {
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+                    .executor(clientExecutor).build();
+            Load load = new Load(client, validRequests, validExpectations, invalidRequests, invalidExpectations);
+            load.run(warmupSeconds, null);
+            load.run(durationSeconds, stats);
+        } finally {
+            clientExecutor.shutdownNow();
+        }
+
+        Properties results = stats.toProperties(durationSeconds);
+        results.setProperty("routes", String.valueOf(securityConfig.getUrlConfigs().size()));
+        results.setProperty("threads", String.valueOf(threads));
+        results.setProperty("invalidRatio", String.valueOf(invalidRatio));
+        writeResults(results, stats);
+        LOGGER.info("Filter throughput: {}", results);
+
+        assertTrue(stats.mismatches.isEmpty(), "Unexpected responses: " + stats.mismatches);
+        List<String> regressions = compareWithBaseline(results);
+        assertTrue(regressions.isEmpty(), "Regressions against the baseline: " + regressions);
+    }
+
+    private void writeResults(Properties results, Stats stats) throws IOException {
+        Files.createDirectories(RESULT_DIR);
+        try (OutputStream out = Files.newOutputStream(RESULT_DIR.resolve("filter-throughput.properties"))) {
+            results.store(out, "URLValidationFilter throughput, latencies in microseconds");
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(RESULT_DIR.resolve("accepted.hgrm")))) {
+            stats.accepted.outputPercentileDistribution(out, 1000.0);
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(RESULT_DIR.resolve("rejected.hgrm")))) {
+            stats.rejected.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private List<String> compareWithBaseline(Properties results) throws IOException {
+        List<String> regressions = new ArrayList<>();
+        String baselineFile = System.getProperty("loadtest.baseline");
+        if (baselineFile == null || !Files.exists(Path.of(baselineFile))) {
+            return regressions;
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(Path.of(baselineFile))) {
+            baseline.load(in);
+        }
+        double throughput = Double.parseDouble(results.getProperty("throughput"));
+        double baselineThroughput = Double.parseDouble(baseline.getProperty("throughput"));
+        if (throughput < baselineThroughput * (1 - tolerance)) {
+            regressions.add("throughput " + throughput + " req/s, baseline " + baselineThroughput);
+        }
+        for (String key : List.of("accepted.p99", "rejected.p99")) {
+            if (baseline.getProperty(key) == null || results.getProperty(key) == null) {
+                continue;
+            }
+            double latency = Double.parseDouble(results.getProperty(key));
+            double baselineLatency = Double.parseDouble(baseline.getProperty(key));
+            if (latency > baselineLatency * (1 + tolerance)) {
+                regressions.add(key + " " + latency + " us, baseline " + baselineLatency);
+            }
+        }
+        return regressions;
+    }
+
+    private class Load {
+
+        private final HttpClient client;
+        private final List<HttpRequest> validRequests;
+        private final List<GeneratedRequest> validExpectations;
+        private final List<HttpRequest> invalidRequests;
+        private final List<GeneratedRequest> invalidExpectations;
+
+        Load(HttpClient client, List<HttpRequest> validRequests, List<GeneratedRequest> validExpectations,
+             List<HttpRequest> invalidRequests, List<GeneratedRequest> invalidExpectations) {
+            this.client = client;
+            this.validRequests = validRequests;
+            this.validExpectations = validExpectations;
+            this.invalidRequests = invalidRequests;
+            this.invalidExpectations = invalidExpectations;
+        }
+
+        /**
+         * Sends requests from all the threads for the given time. Nothing is recorded if stats is null.
+         */
+        void run(int seconds, Stats stats) throws Exception {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Stats>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    long seed = i;
+                    results.add(workers.submit(() -> work(deadline, new SplittableRandom(seed))));
+                }
+                for (Future<Stats> result : results) {
+                    Stats workerStats = result.get();
+                    if (stats != null) {
+                        stats.add(workerStats);
+                    }
+                }
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        private Stats work(long deadline, SplittableRandom random) throws Exception {
+            // One histogram per worker, merged at the end, so the workers don't contend on the recording.
+            Stats stats = new Stats();
+            while (System.nanoTime() < deadline) {
+                boolean invalid = !invalidRequests.isEmpty() && random.nextDouble() < invalidRatio;
+                int index = random.nextInt(invalid ? invalidRequests.size() : validRequests.size());
+                HttpRequest request = (invalid ? invalidRequests : validRequests).get(index);
+                GeneratedRequest expectation = (invalid ? invalidExpectations : validExpectations).get(index);
+
+                long start = System.nanoTime();
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                long latency = System.nanoTime() - start;
+
+                boolean accepted = response.statusCode() == 200;
+                (accepted ? stats.accepted : stats.rejected).recordValue(Math.min(latency, HIGHEST_TRACKABLE_NANOS));
+                boolean expected = expectation.isExpectAccepted() ? accepted
+                        : response.statusCode() >= 400 && response.statusCode() < 500;
+                if (!expected && stats.mismatches.size() < 10) {
+                    stats.mismatches.add(expectation.getRoute() + " " + expectation.getDescription() + " => "
+                            + response.statusCode());
+                }
+            }
+            return stats;
+        }
+    }
+
+    private static class Stats {
+
+        private final Histogram accepted = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final Histogram rejected = new Histogram(HIGHEST_TRACKABLE_NANOS, 3);
+        private final List<String> mismatches = new ArrayList<>();
+
+        void add(Stats other) {
+            accepted.add(other.accepted);
+            rejected.add(other.rejected);
+            for (String mismatch : other.mismatches) {
+                if (!mismatches.contains(mismatch)) {
+                    mismatches.add(mismatch);
+                }
+            }
+        }
+
+        Properties toProperties(int durationSeconds) {
+            Properties properties = new Properties();
+            long requests = accepted.getTotalCount() + rejected.getTotalCount();
+            properties.setProperty("requests", String.valueOf(requests));
+            properties.setProperty("throughput", String.format(Locale.ROOT, "%.1f", (double) requests / durationSeconds));
+            addLatencies(properties, "accepted", accepted);
+            addLatencies(properties, "rejected", rejected);
+            properties.setProperty("mismatches", String.valueOf(mismatches.size()));
+            return properties;
+        }
+
+        private void addLatencies(Properties properties, String prefix, Histogram histogram) {
+            properties.setProperty(prefix + ".count", String.valueOf(histogram.getTotalCount()));
+            if (histogram.getTotalCount() == 0) {
+                return;
+            }
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                properties.setProperty(prefix + "." + PERCENTILE_KEYS[i],
+                        String.valueOf(histogram.getValueAtPercentile(PERCENTILES[i]) / 1000));
+            }
+            properties.setProperty(prefix + ".max", String.valueOf(histogram.getMaxValue() / 1000));
+        }
+    }
+
+    @TestConfiguration
+    static class LoadTestConfiguration {
+
+        /**
+         * Reads the configuration from loadtest.config, or the sample configuration of the test resources.
+         */
+        @Bean
+        public WebSecurityConfiguration webSecurityConfiguration() throws IOException {
+            String configFile = System.getProperty("loadtest.config");
+            try (InputStream in = configFile != null ? Files.newInputStream(Path.of(configFile))
+                    : new ClassPathResource("load/security.json").getInputStream()) {
+                return new ObjectMapper().readValue(in, WebSecurityConfiguration.class);
+            }
+        }
+
+        @Bean
+        public LoadTestController loadTestController() {
+            return new LoadTestController();
+        }
+    }
+
+    /**
+     * Accepts every request which passes the filter, so the measured cost is the filter and the container.
+     */
+    @RestController
+    static class LoadTestController {
+
+        @RequestMapping("/**")
+        public ResponseEntity<Void> handle() {
+            return ResponseEntity.ok().build();
+        }
+    }
+}
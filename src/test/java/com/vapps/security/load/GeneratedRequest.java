@@ -0,0 +1,35 @@
+package com.vapps.security.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * A request derived from a URLConfig and whether the filter is expected to let it through.
+ */
+@Data
+@AllArgsConstructor
+public class GeneratedRequest {
+
+    private String route;
+    private String description;
+    private String method;
+    private String pathAndQuery;
+    private Map<String, String> headers;
+    private String body;
+    private boolean expectAccepted;
+
+    public HttpRequest toHttpRequest(String baseUrl) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + pathAndQuery))
+                .timeout(Duration.ofSeconds(30))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body));
+        headers.forEach(builder::header);
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,310 @@
+package com.vapps.security.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.*;
+import com.vapps.security.config.RequestBodyConfig.RequestBodyType;
+import org.springframework.http.HttpHeaders;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Derives requests from a URLConfig: one valid request, and variants of it which break exactly one rule of the
+ * config, like an out of range number, a value not matching the regex, a missing mandatory field or a JSON array
+ * with an invalid element at the end of a large array.
+ *
+ * Values for the REGEX types are picked from a list of samples, a route whose regex matches none of them can't be
+ * generated and an IllegalArgumentException is thrown.
+ */
+public class RequestGenerator {
+
+    public static final String VALID = "valid";
+
+    public static final int OVERSIZED_ARRAY_LENGTH = 1000;
+
+    private static final String UNKNOWN_NAME = "loadTestUnknown";
+
+    private static final Pattern VARIABLE = Pattern.compile("\\{([^}:]+)(:[^}]*)?}");
+
+    private static final List<String> REGEX_SAMPLES = List.of("abc", "ABC", "AB", "abc123", "123", "1", "a", "true",
+            "abc-123", "abc_123", "ABC-123", "2024-01-01", "user@example.com", "00000000-0000-0000-0000-000000000000",
+            "0123456789abcdef0123456789abcdef");
+
+    private static final List<String> INVALID_REGEX_SAMPLES = List.of("!!", "<>", "%%", "~");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Returns the valid request of the route followed by its invalid variants.
+     *
+     * @throws IllegalArgumentException if a valid value can't be generated for a field of the route.
+     */
+    public List<GeneratedRequest> generate(URLConfig urlConfig) {
+        Draft valid = validDraft(urlConfig);
+        List<GeneratedRequest> requests = new ArrayList<>();
+        requests.add(valid.toRequest(urlConfig, VALID, true));
+        // Shadow routes only record the rejections, so the invalid requests are let through as well.
+        boolean expectAccepted = urlConfig.isShadow();
+
+        for (URLParamConfig param : urlConfig.getParams()) {
+            String invalidValue = invalidValue(param.getType(), param.getRegex(), param);
+            if (invalidValue != null) {
+                Draft draft = valid.copy();
+                draft.params.put(param.getName(), List.of(invalidValue));
+                requests.add(draft.toRequest(urlConfig, "invalid param " + param.getName(), expectAccepted));
+            }
+            if (param.isMandatory()) {
+                Draft draft = valid.copy();
+                draft.params.remove(param.getName());
+                requests.add(draft.toRequest(urlConfig, "missing param " + param.getName(), expectAccepted));
+            }
+        }
+        Draft unknownParam = valid.copy();
+        unknownParam.params.put(UNKNOWN_NAME, List.of("1"));
+        requests.add(unknownParam.toRequest(urlConfig, "unknown param", expectAccepted));
+
+        for (PathVariable pathVariable : urlConfig.getPathVariables()) {
+            String invalidValue = invalidValue(pathVariable.getType(), pathVariable.getRegex(), pathVariable);
+            if (invalidValue != null && !invalidValue.isEmpty()) {
+                Draft draft = valid.copy();
+                draft.pathVariables.put(pathVariable.getName(), invalidValue);
+                requests.add(draft.toRequest(urlConfig, "invalid path variable " + pathVariable.getName(),
+                        expectAccepted));
+            }
+        }
+
+        for (HeaderConfig header : urlConfig.getHeaders()) {
+            String invalidValue = header.getAllowedValues().isEmpty()
+                    ? invalidValue(header.getType(), header.getRegex(), header) : "application/x-load-test";
+            if (invalidValue != null) {
+                Draft draft = valid.copy();
+                draft.headers.put(header.getName(), invalidValue);
+                requests.add(draft.toRequest(urlConfig, "invalid header " + header.getName(), expectAccepted));
+            }
+            if (header.isMandatory()) {
+                Draft draft = valid.copy();
+                draft.headers.remove(header.getName());
+                requests.add(draft.toRequest(urlConfig, "missing header " + header.getName(), expectAccepted));
+            }
+        }
+
+        for (CookieConfig cookie : urlConfig.getCookies()) {
+            String invalidValue = invalidValue(cookie.getType(), cookie.getRegex(), cookie);
+            if (invalidValue != null) {
+                Draft draft = valid.copy();
+                draft.cookies.put(cookie.getName(), invalidValue);
+                requests.add(draft.toRequest(urlConfig, "invalid cookie " + cookie.getName(), expectAccepted));
+            }
+            if (cookie.isMandatory()) {
+                Draft draft = valid.copy();
+                draft.cookies.remove(cookie.getName());
+                requests.add(draft.toRequest(urlConfig, "missing cookie " + cookie.getName(), expectAccepted));
+            }
+        }
+
+        if (valid.body != null) {
+            for (RequestBodyField field : urlConfig.getRequestBodyConfig().getFields()) {
+                Object invalidValue = invalidJsonValue(field);
+                if (invalidValue != null) {
+                    Draft draft = valid.copy();
+                    draft.body.put(field.getKey(), invalidValue);
+                    String description = invalidValue instanceof List ? "oversized array " : "invalid body field ";
+                    requests.add(draft.toRequest(urlConfig, description + field.getKey(), expectAccepted));
+                }
+                if (field.isMandatory()) {
+                    Draft draft = valid.copy();
+                    draft.body.remove(field.getKey());
+                    requests.add(draft.toRequest(urlConfig, "missing body field " + field.getKey(),
+                            expectAccepted));
+                }
+            }
+            Draft unknownField = valid.copy();
+            unknownField.body.put(UNKNOWN_NAME, 1);
+            requests.add(unknownField.toRequest(urlConfig, "unknown body field", expectAccepted));
+        }
+        return requests;
+    }
+
+    private Draft validDraft(URLConfig urlConfig) {
+        Draft draft = new Draft();
+        for (URLParamConfig param : urlConfig.getParams()) {
+            String value = validValue(param.getType(), param.getRegex(), param);
+            draft.params.put(param.getName(), param.isMultiple() ? List.of(value, value) : List.of(value));
+        }
+        for (PathVariable pathVariable : urlConfig.getPathVariables()) {
+            draft.pathVariables.put(pathVariable.getName(),
+                    validValue(pathVariable.getType(), pathVariable.getRegex(), pathVariable));
+        }
+        for (HeaderConfig header : urlConfig.getHeaders()) {
+            draft.headers.put(header.getName(), header.getAllowedValues().isEmpty()
+                    ? validValue(header.getType(), header.getRegex(), header) : header.getAllowedValues().get(0));
+        }
+        for (CookieConfig cookie : urlConfig.getCookies()) {
+            draft.cookies.put(cookie.getName(), validValue(cookie.getType(), cookie.getRegex(), cookie));
+        }
+        RequestBodyConfig bodyConfig = urlConfig.getRequestBodyConfig();
+        if (bodyConfig != null && bodyConfig.getType() == RequestBodyType.JSON) {
+            draft.body = validJsonObject(bodyConfig.getFields());
+            if (draft.headers.keySet().stream().noneMatch(HttpHeaders.CONTENT_TYPE::equalsIgnoreCase)) {
+                draft.headers.put(HttpHeaders.CONTENT_TYPE, "application/json");
+            }
+        }
+        return draft;
+    }
+
+    private String validValue(DataType type, String regex, Field field) {
+        return switch (type) {
+            case INTEGER, LONG -> String.valueOf(validNumber(field));
+            case BOOLEAN -> "true";
+            case STRING -> validString(field);
+            case REGEX -> validRegexValue(regex);
+            default -> throw new IllegalArgumentException("Unsupported data type " + type);
+        };
+    }
+
+    /**
+     * Returns a value breaking the rules of the field, or null if every value is valid, like a STRING without
+     * limits.
+     */
+    private String invalidValue(DataType type, String regex, Field field) {
+        return switch (type) {
+            case INTEGER -> field.getMaxLength() < Integer.MAX_VALUE
+                    ? String.valueOf((long) field.getMaxLength() + 1) : "2147483648";
+            case LONG -> field.getMaxLength() < Integer.MAX_VALUE
+                    ? String.valueOf((long) field.getMaxLength() + 1) : "9223372036854775808";
+            case BOOLEAN -> "maybe";
+            case STRING -> field.getMaxLength() < 4096 ? "a".repeat(field.getMaxLength() + 1)
+                    : field.getMinLength() > 0 ? "a".repeat(field.getMinLength() - 1) : null;
+            case REGEX -> INVALID_REGEX_SAMPLES.stream().filter(sample -> !Pattern.matches(regex, sample))
+                    .findFirst().orElse(null);
+            default -> null;
+        };
+    }
+
+    private long validNumber(Field field) {
+        return field.getMinLength() <= 1 && field.getMaxLength() >= 1 ? 1 : field.getMinLength();
+    }
+
+    private String validString(Field field) {
+        return "a".repeat(Math.max(field.getMinLength(), Math.min(8, field.getMaxLength())));
+    }
+
+    private String validRegexValue(String regex) {
+        return REGEX_SAMPLES.stream().filter(sample -> Pattern.matches(regex, sample)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No sample value matches the regex " + regex));
+    }
+
+    private Map<String, Object> validJsonObject(List<RequestBodyField> fields) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (RequestBodyField field : fields) {
+            json.put(field.getKey(), validJsonValue(field));
+        }
+        return json;
+    }
+
+    private Object validJsonValue(RequestBodyField field) {
+        return switch (field.getType()) {
+            case INTEGER, LONG -> validNumber(field);
+            // The service accepts only the strings "true" and "false" for a BOOLEAN body field.
+            case BOOLEAN -> "true";
+            case STRING -> validString(field);
+            case REGEX -> validRegexValue(field.getRegex());
+            case JSON_OBJECT -> validJsonObject(field.getChildren());
+            case JSON_ARRAY_INT, JSON_ARRAY_LONG -> List.of(1, 2, 3);
+            case JSON_ARRAY_STRING -> Collections.nCopies(3, validString(field));
+            case JSON_ARRAY_REGEX -> Collections.nCopies(3, validRegexValue(field.getRegex()));
+            case JSON_ARRAY_OF_OBJECT -> Collections.nCopies(2, validJsonObject(field.getChildren()));
+        };
+    }
+
+    private Object invalidJsonValue(RequestBodyField field) {
+        return switch (field.getType()) {
+            case INTEGER -> 2147483648L;
+            case LONG -> "not-a-number";
+            case BOOLEAN -> "maybe";
+            case STRING -> invalidValue(DataType.STRING, null, field);
+            case REGEX -> invalidValue(DataType.REGEX, field.getRegex(), field);
+            case JSON_OBJECT -> "not-an-object";
+            case JSON_ARRAY_INT -> oversizedArray(1, 2147483648L);
+            case JSON_ARRAY_LONG -> oversizedArray(1, "not-a-number");
+            case JSON_ARRAY_STRING -> oversizedArray(validString(field), invalidValue(DataType.STRING, null, field));
+            case JSON_ARRAY_REGEX -> oversizedArray(validRegexValue(field.getRegex()),
+                    invalidValue(DataType.REGEX, field.getRegex(), field));
+            case JSON_ARRAY_OF_OBJECT -> oversizedArray(validJsonObject(field.getChildren()), "not-an-object");
+        };
+    }
+
+    /**
+     * Returns a large array of valid elements ending with an invalid one, so the whole array has to be validated
+     * before the request is rejected.
+     */
+    private List<Object> oversizedArray(Object validElement, Object invalidElement) {
+        if (invalidElement == null) {
+            return null;
+        }
+        List<Object> array = new ArrayList<>(Collections.nCopies(OVERSIZED_ARRAY_LENGTH, validElement));
+        array.add(invalidElement);
+        return array;
+    }
+
+    private String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parts of a request while it is generated. Copies are shallow, the variants only replace top level values.
+     */
+    private class Draft {
+
+        private Map<String, List<String>> params = new LinkedHashMap<>();
+        private Map<String, String> pathVariables = new LinkedHashMap<>();
+        private Map<String, String> headers = new LinkedHashMap<>();
+        private Map<String, String> cookies = new LinkedHashMap<>();
+        private Map<String, Object> body;
+
+        Draft copy() {
+            Draft copy = new Draft();
+            copy.params = new LinkedHashMap<>(params);
+            copy.pathVariables = new LinkedHashMap<>(pathVariables);
+            copy.headers = new LinkedHashMap<>(headers);
+            copy.cookies = new LinkedHashMap<>(cookies);
+            copy.body = body == null ? null : new LinkedHashMap<>(body);
+            return copy;
+        }
+
+        GeneratedRequest toRequest(URLConfig urlConfig, String description, boolean expectAccepted) {
+            StringBuilder path = new StringBuilder();
+            Matcher matcher = VARIABLE.matcher(urlConfig.getPath());
+            while (matcher.find()) {
+                String value = pathVariables.getOrDefault(matcher.group(1).trim(), "1");
+                matcher.appendReplacement(path, Matcher.quoteReplacement(encode(value)));
+            }
+            matcher.appendTail(path);
+            String pathAndQuery = path.toString().replace("**", "a/b").replace('*', 'a').replace('?', 'a');
+            if (!params.isEmpty()) {
+                pathAndQuery += params.entrySet().stream()
+                        .flatMap(param -> param.getValue().stream()
+                                .map(value -> encode(param.getKey()) + "=" + encode(value)))
+                        .collect(Collectors.joining("&", "?", ""));
+            }
+            Map<String, String> requestHeaders = new LinkedHashMap<>(headers);
+            if (!cookies.isEmpty()) {
+                requestHeaders.put(HttpHeaders.COOKIE, cookies.entrySet().stream()
+                        .map(cookie -> cookie.getKey() + "=" + cookie.getValue())
+                        .collect(Collectors.joining("; ")));
+            }
+            try {
+                return new GeneratedRequest(urlConfig.getMethod().name() + " " + urlConfig.getPath(), description,
+                        urlConfig.getMethod().name(), pathAndQuery, requestHeaders,
+                        body == null ? null : objectMapper.writeValueAsString(body), expectAccepted);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.vapps.security.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.RequestBodyConfig;
+import com.vapps.security.config.RequestBodyField;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.URLParamConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.replay.AccessLogReplay.LogFormat;
+import com.vapps.security.service.URLValidationService;
+import com.vapps.security.service.ValidationReport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccessLogReplayTest {
+
+    /**
+     * Small enough that most lines span several chunks.
+     */
+    private static final long CHUNK_SIZE = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysAccessLogLinesSplitIntoChunks() throws Exception {
+        String prefix = "10.0.0.1 - - [10/Oct/2024:13:55:36 +0000] ";
+        String log = prefix + "\"GET /app/api/items?page=2 HTTP/1.1\" 200 512\n"
+                + prefix + "\"GET /app/api/items?page=abc HTTP/1.1\" 400 80\r\n"
+                + prefix + "\"GET /app/api/items?page=%zz HTTP/1.1\" 400 80\n"
+                + "\n"
+                + prefix + "\"GET /app/unknown HTTP/1.1\" 404 80\r\n"
+                + "a line without a request\n"
+                + prefix + "\"POST /app/api/orders HTTP/1.1\" 201 12\n"
+                + prefix + "\"GET /app/api/items HTTP/1.1\" 200 512 \"-\" \"" + "a".repeat(500) + "\"";
+
+        ValidationReport report = replay(LogFormat.ACCESS_LOG, log);
+
+        assertEquals(5, report.getTotal());
+        assertEquals(2, report.getRejected());
+        assertEquals(2, report.getSkipped());
+        assertEquals(1, report.getRejected("GET /api/items", "Invalid integer value for parameter: page"));
+        assertEquals(1, report.getRejected("<no route>", "Oops!, URL not found!"));
+    }
+
+    @Test
+    void replaysNdjsonAndHarRequests() throws Exception {
+        String log = "{\"method\":\"POST\",\"url\":\"http://localhost:8080/api/orders\",\"body\":{\"customerId\":5}}\n"
+                + "{\"method\":\"POST\",\"url\":\"/api/orders\",\"postData\":{\"text\":\"{}\"}}\n"
+                + "{\"method\":\"GET\",\"url\":\"/api/items?page=1\"}\n"
+                + "{\"method\":\"GET\"}\n"
+                + "not a json\n";
+
+        ValidationReport report = new ValidationReport();
+        Path logFile = write(log);
+        new AccessLogReplay(newService(), LogFormat.NDJSON, "", 2, CHUNK_SIZE).replay(logFile, report);
+
+        assertEquals(3, report.getTotal());
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getSkipped());
+        assertEquals(1, report.getRejected("POST /api/orders", "customerId is mandatory!"));
+    }
+
+    @Test
+    void emptyFileHasNoRequests() throws Exception {
+        ValidationReport report = replay(LogFormat.ACCESS_LOG, "");
+
+        assertEquals(0, report.getTotal());
+        assertEquals(0, report.getSkipped());
+    }
+
+    @Test
+    void threadsShouldBeAtLeastOne() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AccessLogReplay(newService(), LogFormat.ACCESS_LOG, "", 0));
+    }
+
+    private ValidationReport replay(LogFormat format, String log) throws Exception {
+        ValidationReport report = new ValidationReport();
+        new AccessLogReplay(newService(), format, "/app", 2, CHUNK_SIZE).replay(write(log), report);
+        return report;
+    }
+
+    private Path write(String log) throws Exception {
+        Path logFile = dir.resolve("access.log");
+        Files.writeString(logFile, log, StandardCharsets.UTF_8);
+        return logFile;
+    }
+
+    private URLValidationService newService() {
+        URLConfig items = new URLConfig();
+        items.setPath("/api/items");
+        items.setParams(List.of(new URLParamConfig("page", DataType.INTEGER, false, false, null, 0, 100)));
+
+        RequestBodyField customerId = new RequestBodyField();
+        customerId.setKey("customerId");
+        customerId.setType(DataType.LONG);
+        customerId.setMandatory(true);
+        RequestBodyConfig bodyConfig = new RequestBodyConfig();
+        bodyConfig.setFields(new ArrayList<>(List.of(customerId)));
+        URLConfig orders = new URLConfig();
+        orders.setPath("/api/orders");
+        orders.setMethod(HttpMethod.POST);
+        orders.setRequestBodyConfig(bodyConfig);
+
+        URLValidationService service = new URLValidationService();
+        ReflectionTestUtils.setField(service, "securityConfiguration",
+                new WebSecurityConfiguration(List.of(items, orders)));
+        ReflectionTestUtils.setField(service, "antPathMatcher", new AntPathMatcher());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        return service;
+    }
+}
@@ -0,0 +1,77 @@
+package com.vapps.security.route;
+
+import com.vapps.security.config.*;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import org.openjdk.jol.vm.VirtualMachine;
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Measures the table with JOL for a large multi tenant configuration, every tenant having the same two routes.
+ */
+class CompactRouteTableMemoryTest {
+
+    private static final int TENANTS = 100_000;
+
+    @Test
+    void simpleRoutesTakeLessThan200BytesEach() {
+        VirtualMachine vm = VM.current();
+        // getRetainedBytes assumes compressed oops and 8 byte alignment, the default for heaps under 32 GB.
+        // addressSize() is the native pointer size, so the reference size is taken from the array layout.
+        assumeTrue(vm.arrayIndexScale("java.lang.Object") == 4 && vm.objectAlignment() == 8
+                && vm.objectHeaderSize() == 12 && vm.arrayHeaderSize() == 16, "Not a compressed oops layout");
+
+        CompactRouteTable.Builder builder = new CompactRouteTable.Builder();
+        for (int tenant = 0; tenant < TENANTS; tenant++) {
+            builder.add(userRoute(tenant));
+            builder.add(orderRoute(tenant));
+        }
+        CompactRouteTable routeTable = builder.build();
+        assertEquals(2 * TENANTS, routeTable.size());
+
+        long measured = GraphLayout.parseInstance(routeTable).totalSize();
+        long perRoute = measured / routeTable.size();
+        assertTrue(perRoute < 200, "Retained " + perRoute + " bytes per route");
+        assertEquals(measured, routeTable.getRetainedBytes(), measured * 0.05,
+                "Estimate is too far from the JOL figure");
+    }
+
+    private URLConfig userRoute(int tenant) {
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/tenants/t" + tenant + "/users/{userId}");
+        urlConfig.setMethod(HttpMethod.GET);
+        urlConfig.setPathVariables(List.of(new PathVariable("userId", DataType.INTEGER, null, false, 1,
+                Integer.MAX_VALUE)));
+        urlConfig.setParams(List.of(new URLParamConfig("page", DataType.INTEGER, false, false, null, 0, 1000)));
+        return urlConfig;
+    }
+
+    private URLConfig orderRoute(int tenant) {
+        RequestBodyField customerId = new RequestBodyField();
+        customerId.setKey("customerId");
+        customerId.setType(DataType.LONG);
+        customerId.setMandatory(true);
+        RequestBodyField note = new RequestBodyField();
+        note.setKey("note");
+        note.setMaxLength(256);
+        List<RequestBodyField> fields = new ArrayList<>();
+        fields.add(customerId);
+        fields.add(note);
+        RequestBodyConfig bodyConfig = new RequestBodyConfig();
+        bodyConfig.setFields(fields);
+
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/tenants/t" + tenant + "/orders");
+        urlConfig.setMethod(HttpMethod.POST);
+        urlConfig.setRequestBodyConfig(bodyConfig);
+        return urlConfig;
+    }
+}
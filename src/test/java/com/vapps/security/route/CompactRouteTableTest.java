@@ -0,0 +1,182 @@
+package com.vapps.security.route;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.*;
+import com.vapps.security.service.URLValidationService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRouteTableTest {
+
+    private static final List<String> PATHS = List.of("/api/family/search", "/api/family/42", "/api/family/42/",
+            "/api/family//search", "/api/family/{familyId}", "/api/Family/search", "/ api/family/search",
+            "/api/users/me", "/api/users/7/orders/9", "/api/a/b/export", "/api/export", "/api/v2/items/5",
+            "/static/app.js", "/static/css/app.css", "/health", "/HEALTH", "/health/", "/", "", "/Api/Case",
+            "/api/family/", "/api//double", "/api/double", "/unknown", "api/family/search");
+
+    @Test
+    void findAgreesWithTheURLConfigsWithTheDefaultMatcher() {
+        assertFindAgrees(new AntPathMatcher());
+    }
+
+    @Test
+    void findAgreesWithTheURLConfigsWithACaseInsensitiveMatcher() {
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        antPathMatcher.setCaseSensitive(false);
+        assertFindAgrees(antPathMatcher);
+    }
+
+    @Test
+    void findAgreesWithTheURLConfigsWhenTokensAreTrimmed() {
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        antPathMatcher.setTrimTokens(true);
+        assertFindAgrees(antPathMatcher);
+    }
+
+    @Test
+    void findAgreesWithTheURLConfigsWithAnotherSeparator() {
+        assertFindAgrees(new AntPathMatcher("."));
+    }
+
+    @Test
+    void getPathReturnsTheConfiguredPattern() {
+        List<URLConfig> urlConfigs = urlConfigs();
+        CompactRouteTable routeTable = CompactRouteTable.compile(urlConfigs);
+        for (int route = 0; route < routeTable.size(); route++) {
+            assertEquals(urlConfigs.get(route).getPath(), routeTable.getPath(route));
+            assertEquals(urlConfigs.get(route).getMethod(), routeTable.getMethod(route));
+        }
+    }
+
+    @Test
+    void snapshotGivesTheSameRoutes(@TempDir Path dir) throws IOException {
+        List<URLConfig> urlConfigs = urlConfigs();
+        urlConfigs.add(detailedConfig());
+        CompactRouteTable routeTable = CompactRouteTable.compile(urlConfigs);
+        Path snapshot = dir.resolve("routes.snapshot");
+        routeTable.writeSnapshot(snapshot);
+
+        CompactRouteTable loaded = CompactRouteTable.loadSnapshot(snapshot);
+        assertEquals(routeTable.size(), loaded.size());
+        for (int route = 0; route < routeTable.size(); route++) {
+            assertEquals(routeTable.getRoute(route), loaded.getRoute(route));
+        }
+        AntPathMatcher antPathMatcher = new AntPathMatcher();
+        for (String path : PATHS) {
+            assertEquals(routeTable.find(path, "GET", antPathMatcher), loaded.find(path, "GET", antPathMatcher), path);
+        }
+        URLConfig detailed = loaded.getRoute(loaded.size() - 1);
+        assertEquals("/api/tenants/{tenantId}/orders", detailed.getPath());
+        assertEquals(List.of("v1", "v2"), detailed.getHeaders().get(0).getAllowedValues());
+        assertEquals("lines", detailed.getRequestBodyConfig().getFields().get(1).getKey());
+        assertEquals("sku", detailed.getRequestBodyConfig().getFields().get(1).getChildren().get(0).getKey());
+        assertTrue(detailed.getResponseBodyConfig().isStripUnknownFields());
+        assertTrue(detailed.isShadow());
+    }
+
+    @Test
+    void corruptedSnapshotIsRejected(@TempDir Path dir) throws IOException {
+        Path snapshot = dir.resolve("routes.snapshot");
+        CompactRouteTable.compile(urlConfigs()).writeSnapshot(snapshot);
+        byte[] bytes = Files.readAllBytes(snapshot);
+        // The header is 16 bytes, this flips a byte of the payload covered by the checksum.
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(snapshot, bytes);
+
+        IOException ex = assertThrows(IOException.class, () -> CompactRouteTable.loadSnapshot(snapshot));
+        assertTrue(ex.getMessage().contains("corrupted"), ex.getMessage());
+    }
+
+    private void assertFindAgrees(AntPathMatcher antPathMatcher) {
+        List<URLConfig> urlConfigs = urlConfigs();
+        URLValidationService service = new URLValidationService();
+        ReflectionTestUtils.setField(service, "securityConfiguration", new WebSecurityConfiguration(urlConfigs));
+        ReflectionTestUtils.setField(service, "antPathMatcher", antPathMatcher);
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        CompactRouteTable routeTable = CompactRouteTable.compile(urlConfigs);
+
+        for (String path : PATHS) {
+            for (String method : List.of("GET", "post")) {
+                String expected = service.getConfig(path, method)
+                        .map(urlConfig -> urlConfig.getMethod() + " " + urlConfig.getPath()).orElse(null);
+                int route = routeTable.find(path, method, antPathMatcher);
+                String actual = route == CompactRouteTable.NOT_FOUND ? null
+                        : routeTable.getMethod(route) + " " + routeTable.getPath(route);
+                assertEquals(expected, actual, method + " " + path);
+            }
+        }
+    }
+
+    private List<URLConfig> urlConfigs() {
+        List<URLConfig> urlConfigs = new ArrayList<>();
+        urlConfigs.add(urlConfig("/api/family/{familyId}", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/family/search", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/family/{familyId}", HttpMethod.POST));
+        urlConfigs.add(urlConfig("/api/family/", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/users/{id}/orders/{orderId}", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/users/me", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/**/export", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api/v{version}/items/{id}", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/static/*.js", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/static/**", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/health", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/Api/Case", HttpMethod.GET));
+        urlConfigs.add(urlConfig("/api//double", HttpMethod.GET));
+        urlConfigs.add(urlConfig("{tenant}/api/family/search", HttpMethod.POST));
+        return urlConfigs;
+    }
+
+    private URLConfig detailedConfig() {
+        RequestBodyField sku = new RequestBodyField();
+        sku.setKey("sku");
+        sku.setRegex("[A-Z0-9-]+");
+        sku.setMaxLength(32);
+        RequestBodyField lines = new RequestBodyField();
+        lines.setKey("lines");
+        lines.setType(DataType.JSON_ARRAY_OF_OBJECT);
+        lines.setChildren(new ArrayList<>(List.of(sku)));
+        RequestBodyField customerId = new RequestBodyField();
+        customerId.setKey("customerId");
+        customerId.setType(DataType.LONG);
+        customerId.setMandatory(true);
+        RequestBodyConfig bodyConfig = new RequestBodyConfig();
+        bodyConfig.setFields(new ArrayList<>(List.of(customerId, lines)));
+        bodyConfig.setMaxExpandedSize(1024 * 1024);
+        bodyConfig.setMaxCompressionRatio(20);
+
+        ResponseBodyConfig responseBodyConfig = new ResponseBodyConfig();
+        responseBodyConfig.setFields(new ArrayList<>(List.of(customerId)));
+        responseBodyConfig.setStripUnknownFields(true);
+
+        URLConfig urlConfig = urlConfig("/api/tenants/{tenantId}/orders", HttpMethod.POST);
+        urlConfig.setPathVariables(List.of(new PathVariable("tenantId", DataType.STRING, "[a-z]+", false, 2, 20)));
+        urlConfig.setParams(List.of(new URLParamConfig("dryRun", DataType.BOOLEAN, false, false, null, 0, 5)));
+        urlConfig.setHeaders(List.of(new HeaderConfig("X-Api-Version", DataType.STRING, true, null, 0, 10,
+                List.of("v1", "v2"))));
+        urlConfig.setCookies(List.of(new CookieConfig("session", DataType.STRING, true, null, 16, 64)));
+        urlConfig.setRequestBodyConfig(bodyConfig);
+        urlConfig.setResponseBodyConfig(responseBodyConfig);
+        urlConfig.setMaxLength(2048);
+        urlConfig.setShadow(true);
+        return urlConfig;
+    }
+
+    private URLConfig urlConfig(String path, HttpMethod method) {
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath(path);
+        urlConfig.setMethod(method);
+        return urlConfig;
+    }
+}
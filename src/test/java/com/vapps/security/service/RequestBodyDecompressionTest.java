@@ -0,0 +1,134 @@
+package com.vapps.security.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vapps.security.config.DataType;
+import com.vapps.security.config.RequestBodyConfig;
+import com.vapps.security.config.RequestBodyField;
+import com.vapps.security.config.URLConfig;
+import com.vapps.security.config.WebSecurityConfiguration;
+import com.vapps.security.exception.AppException;
+import com.vapps.security.util.CountingInputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestBodyDecompressionTest {
+
+    private static final int BOMB_SIZE = 20 * 1024 * 1024;
+
+    @Test
+    void gzipBombStopsAtMaxExpandedSize() throws Exception {
+        URLConfig urlConfig = urlConfig(1024 * 1024, 1_000_000);
+        byte[] bomb = gzip(bombJson());
+        CountingInputStream source = new CountingInputStream(new ByteArrayInputStream(bomb));
+
+        AppException ex = assertThrows(AppException.class, () -> newService(urlConfig).validateURL(urlConfig,
+                "/upload", Map.of(), "gzip", () -> source));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(), ex.getStatus());
+        assertTrue(ex.getMessage().contains("expanded size"), ex.getMessage());
+        assertTrue(source.getCount() < bomb.length, "Read the whole compressed body");
+    }
+
+    @Test
+    void gzipBombStopsAtMaxCompressionRatio() throws Exception {
+        URLConfig urlConfig = urlConfig(100L * 1024 * 1024, 100);
+        byte[] bomb = gzip(bombJson());
+
+        AppException ex = assertThrows(AppException.class, () -> newService(urlConfig).validateURL(urlConfig,
+                "/upload", Map.of(), "gzip", () -> new ByteArrayInputStream(bomb)));
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE.value(), ex.getStatus());
+        assertTrue(ex.getMessage().contains("compression ratio"), ex.getMessage());
+    }
+
+    @Test
+    void unknownEncodingIsUnsupportedMediaType() {
+        URLConfig urlConfig = urlConfig(1024 * 1024, 100);
+        byte[] body = "{\"data\":\"abc\"}".getBytes(StandardCharsets.UTF_8);
+
+        AppException ex = assertThrows(AppException.class, () -> newService(urlConfig).validateURL(urlConfig,
+                "/upload", Map.of(), "br", () -> new ByteArrayInputStream(body)));
+        assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(), ex.getStatus());
+    }
+
+    @Test
+    void acceptsSmallEncodedBodies() throws Exception {
+        URLConfig urlConfig = urlConfig(1024 * 1024, 100);
+        byte[] json = "{\"data\":\"abc\"}".getBytes(StandardCharsets.UTF_8);
+        URLValidationService service = newService(urlConfig);
+
+        byte[] gzipped = gzip(json);
+        service.validateURL(urlConfig, "/upload", Map.of(), "gzip", () -> new ByteArrayInputStream(gzipped));
+        byte[] deflated = deflate(json);
+        service.validateURL(urlConfig, "/upload", Map.of(), "deflate", () -> new ByteArrayInputStream(deflated));
+        service.validateURL(urlConfig, "/upload", Map.of(), null, () -> new ByteArrayInputStream(json));
+    }
+
+    private URLConfig urlConfig(long maxExpandedSize, int maxCompressionRatio) {
+        RequestBodyField field = new RequestBodyField();
+        field.setKey("data");
+        field.setType(DataType.STRING);
+        RequestBodyConfig bodyConfig = new RequestBodyConfig();
+        bodyConfig.setFields(List.of(field));
+        bodyConfig.setMaxExpandedSize(maxExpandedSize);
+        bodyConfig.setMaxCompressionRatio(maxCompressionRatio);
+        URLConfig urlConfig = new URLConfig();
+        urlConfig.setPath("/upload");
+        urlConfig.setMethod(HttpMethod.POST);
+        urlConfig.setRequestBodyConfig(bodyConfig);
+        return urlConfig;
+    }
+
+    private URLValidationService newService(URLConfig urlConfig) {
+        URLValidationService service = new URLValidationService();
+        ReflectionTestUtils.setField(service, "securityConfiguration",
+                new WebSecurityConfiguration(List.of(urlConfig)));
+        ReflectionTestUtils.setField(service, "antPathMatcher", new AntPathMatcher());
+        ReflectionTestUtils.setField(service, "objectMapper", new ObjectMapper());
+        return service;
+    }
+
+    /**
+     * A valid JSON prefix followed by a long string, so the parser keeps reading until a limit stops it.
+     */
+    private byte[] bombJson() {
+        byte[] json = new byte[BOMB_SIZE];
+        byte[] prefix = "{\"data\":\"".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(prefix, 0, json, 0, prefix.length);
+        for (int i = prefix.length; i < json.length - 2; i++) {
+            json[i] = 'a';
+        }
+        json[json.length - 2] = '"';
+        json[json.length - 1] = '}';
+        return json;
+    }
+
+    private byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] deflate(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream deflate = new DeflaterOutputStream(out)) {
+            deflate.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
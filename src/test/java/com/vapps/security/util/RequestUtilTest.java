@@ -0,0 +1,32 @@
+package com.vapps.security.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestUtilTest {
+
+    @Test
+    void parsesRepeatedEmptyAndEncodedParams() {
+        Map<String, String[]> params = RequestUtil.parseQueryString("a=1&a=2&b&&c=%20x+y&d%5B%5D=");
+
+        assertArrayEquals(new String[]{"1", "2"}, params.get("a"));
+        assertArrayEquals(new String[]{""}, params.get("b"));
+        assertArrayEquals(new String[]{" x y"}, params.get("c"));
+        assertArrayEquals(new String[]{""}, params.get("d[]"));
+        assertEquals(4, params.size());
+    }
+
+    @Test
+    void missingQueryHasNoParams() {
+        assertTrue(RequestUtil.parseQueryString(null).isEmpty());
+        assertTrue(RequestUtil.parseQueryString("").isEmpty());
+    }
+
+    @Test
+    void malformedEscapeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> RequestUtil.parseQueryString("page=%zz"));
+    }
+}